@@ -1,5 +1,10 @@
+import java.util.List;
+import java.util.Map;
+
 import org.robotframework.javalib.library.AnnotationLibrary;
 
+import com.github.hi_fi.dblibrary.keywords.DatabaseConnection;
+
 public class DatabaseLibrary extends AnnotationLibrary {
 	public static final String ROBOT_LIBRARY_SCOPE = "GLOBAL";
 
@@ -7,6 +12,28 @@ public class DatabaseLibrary extends AnnotationLibrary {
 		super("com/github/hi_fi/dblibrary/keywords/**");
 	}
 
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object runKeyword(String keywordName, List args) {
+		try {
+			return super.runKeyword(keywordName, args);
+		} finally {
+			DatabaseConnection.releaseBorrowedConnections();
+			DatabaseConnection.clearThreadConnectionAlias();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object runKeyword(String keywordName, List args, Map kwargs) {
+		try {
+			return super.runKeyword(keywordName, args, kwargs);
+		} finally {
+			DatabaseConnection.releaseBorrowedConnections();
+			DatabaseConnection.clearThreadConnectionAlias();
+		}
+	}
+
 	@Override
 	public String getKeywordDocumentation(String keywordName) {
 		if (keywordName.equals("__intro__"))
@@ -37,7 +64,12 @@ public class DatabaseLibrary extends AnnotationLibrary {
 					+ "*Remote Library Support*\n\n"
 					+ "At release 3.0 remote functionalities were removed from the library itself. "
 					+ "Library can be used directly with jrobotremoteserver (https://github.com/ombre42/jrobotremoteserver/wiki/Getting-Started). "
-					+ "Example can be found at project's acceptance tests: https://github.com/Hi-Fi/robotframework-dblibrary/tree/master/src/test/robotframework/acceptance";
+					+ "Example can be found at project's acceptance tests: https://github.com/Hi-Fi/robotframework-dblibrary/tree/master/src/test/robotframework/acceptance"
+					+ "\n\n" + "*Connection Pooling*\n\n"
+					+ "When 'Connect To Database' is given a maximum pool size, the alias is backed by a pool of "
+					+ "connections. Every keyword borrows its own connection from the pool and returns it after "
+					+ "the keyword has finished, so parallel clients of the same remote server are not serialized "
+					+ "to one physical connection.";
 		return super.getKeywordDocumentation(keywordName);
 	}
 }
\ No newline at end of file
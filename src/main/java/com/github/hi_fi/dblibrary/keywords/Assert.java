@@ -4,6 +4,7 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 import org.robotframework.javalib.annotation.ArgumentNames;
 import org.robotframework.javalib.annotation.RobotKeyword;
@@ -19,59 +20,42 @@ public class Assert {
 			+ "the table and the rownum to check must be passed to this keyword. The "
 			+ "corresponding values are then read from that row in the given table and "
 			+ "compared to the expected values. If all values match the teststep will "
-			+ "pass, otherwise it will fail. " + "\n\n" + "Example: \n"
-			+ "| Check Content for Row Identified by Rownum | Name,EMail | John Doe|john.doe@x-files | MySampleTable | 4 | ")
+			+ "pass, otherwise it will fail. " + "\n\n"
+			+ "Only the row to check is read: the database skips the rows before it with OFFSET ... FETCH, "
+			+ "LIMIT ... OFFSET or ROW_NUMBER(), depending on what it supports. Without an order rows are "
+			+ "in the order the database happens to return them, so give the columns to order by to make "
+			+ "the check deterministic. " + "\n\n" + "Example: \n"
+			+ "| Check Content for Row Identified by Rownum | Name,EMail | John Doe|john.doe@x-files | MySampleTable | 4 | \n"
+			+ "| Check Content for Row Identified by Rownum | Name,EMail | John Doe|john.doe@x-files | MySampleTable | 4 | Id | ")
 	@ArgumentNames({ "Column names (comma separated)", "Expected values (pipe separated)", "Table name",
-			"Number of row to check" })
+			"Number of row to check", "Order by=" })
 	public void checkContentForRowIdentifiedByRownum(String columnNames, String expectedValues, String tableName,
-			String rowNumValue) throws SQLException, DatabaseLibraryException {
+			String rowNumValue, String orderBy) throws SQLException, DatabaseLibraryException {
 
 		long rowNum = Long.valueOf(rowNumValue);
 
-		String sqlString = "select " + columnNames + " from " + tableName;
-
-		String[] columns = columnNames.split(",");
-		String[] values = expectedValues.split("\\|");
-
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
-		try {
-			stmt.executeQuery(sqlString);
-			ResultSet rs = (ResultSet) stmt.getResultSet();
-
-			long count = 0;
-			while (rs.next()) {
-
-				count++;
-				if (count == rowNum) {
-
-					for (int i = 0; i < columns.length; i++) {
-						String fieldValue = rs.getString(columns[i]);
-						System.out.println(columns[i] + " -> " + fieldValue);
+		final String[] columns = columnNames.split(",");
+		final String[] values = expectedValues.split("\\|");
 
-						if (values[i].equals("(NULL)")) {
-							values[i] = "";
-						}
-
-						if (!fieldValue.equals(values[i])) {
-							throw new DatabaseLibraryException(
-									"Value found: '" + fieldValue + "'. Expected: '" + values[i] + "'");
-						}
+		boolean found = new RowPositioner(DatabaseConnection.getConnection()).read(columnNames, tableName, orderBy,
+				rowNum, new RowPositioner.RowReader() {
+					@Override
+					public void read(ResultSet rs) throws SQLException, DatabaseLibraryException {
+						checkValues(rs, columns, values);
 					}
-					break;
-				}
-			}
-
-			// Rownum does not exist
-			if (count != rowNum) {
-				throw new DatabaseLibraryException("Given rownum does not exist for statement: " + sqlString);
-			}
+				});
 
-		} finally {
-			// stmt.close() automatically takes care of its ResultSet, so no
-			// rs.close()
-			stmt.close();
+		// Rownum does not exist
+		if (!found) {
+			throw new DatabaseLibraryException("Given rownum does not exist for statement: "
+					+ RowPositioner.buildSelect(columnNames, tableName, orderBy));
 		}
 	}
+
+	public void checkContentForRowIdentifiedByRownum(String columnNames, String expectedValues, String tableName,
+			String rowNumValue) throws SQLException, DatabaseLibraryException {
+		checkContentForRowIdentifiedByRownum(columnNames, expectedValues, tableName, rowNumValue, null);
+	}
 	
 	@RobotKeyword("This keyword can be used to check for proper content inside a specific "
 			+ "row in a database table. For this it is possible to give a "
@@ -88,35 +72,40 @@ public class Assert {
 			"Where clause to identify the row" })
 	public void checkContentForRowIdentifiedByWhereClause(String columnNames, String expectedValues, String tableName,
 			String whereClause) throws SQLException, DatabaseLibraryException {
+		checkContentForRowIdentifiedByWhereClause(columnNames, expectedValues, tableName, whereClause, null);
+	}
+
+	@RobotKeyword("Same as 'Check Content for Row Identified by WhereClause', but the where-clause can "
+			+ "contain ? placeholders, which are bound to the given parameters in the given order. This "
+			+ "way the same statement (and execution plan) is used for all the values. " + "\n\n"
+			+ "Example: \n"
+			+ "| Check Content for Row Identified by WhereClause With Parameters | Name,EMail | John Doe|john.doe@x-files | MySampleTable | Postings=? | ${14} | ")
+	@ArgumentNames({ "Column names (comma separated)", "Expected values (pipe separated)", "Table name",
+			"Where clause to identify the row", "*Parameters" })
+	public void checkContentForRowIdentifiedByWhereClauseWithParameters(String columnNames, String expectedValues,
+			String tableName, String whereClause, List<Object> parameters)
+			throws SQLException, DatabaseLibraryException {
+		checkContentForRowIdentifiedByWhereClause(columnNames, expectedValues, tableName, whereClause, parameters);
+	}
+
+	private void checkContentForRowIdentifiedByWhereClause(String columnNames, String expectedValues,
+			String tableName, String whereClause, List<Object> parameters)
+			throws SQLException, DatabaseLibraryException {
 
 		String sqlString = "select " + columnNames + " from " + tableName + " where " + whereClause;
 
 		String[] columns = columnNames.split(",");
 		String[] values = expectedValues.split("\\|");
 
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
+		Statement stmt = Statements.executeRepeated(DatabaseConnection.getConnection(), sqlString, parameters);
 		try {
-			stmt.executeQuery(sqlString);
 			ResultSet rs = (ResultSet) stmt.getResultSet();
 
 			long count = 0;
 			while (rs.next()) {
 				count++;
 				if (count == 1) {
-
-					for (int i = 0; i < columns.length; i++) {
-						String fieldValue = rs.getString(columns[i]);
-						System.out.println(columns[i] + " -> " + fieldValue);
-
-						if (values[i].equals("(NULL)")) {
-							values[i] = "";
-						}
-
-						if (!fieldValue.equals(values[i])) {
-							throw new DatabaseLibraryException(
-									"Value found: '" + fieldValue + "'. Expected: '" + values[i] + "'");
-						}
-					}
+					checkValues(rs, columns, values);
 				}
 
 				// Throw exception if more than one row is selected by the given
@@ -133,7 +122,7 @@ public class Assert {
 			}
 
 		} finally {
-			stmt.close();
+			Statements.release(stmt);
 		}
 	}
 	
@@ -159,27 +148,47 @@ public class Assert {
 	
 	@RobotKeyword("This keyword can be used to check the inexistence of content inside a "
 			+ "specific row in a database table defined by a where-clause. This can be "
-			+ "used to validate an exclusion of specific data from a table. " + "\n\n" + "Example: \n"
-			+ "| Row Should Not Exist In Table | MySampleTable | Name='John Doe' | " + "\n\n"
+			+ "used to validate an exclusion of specific data from a table. " + "\n\n"
+			+ "The where-clause can contain ? placeholders, which are bound to the given parameters in "
+			+ "the given order. Existence is checked with a query reading at most one row and no columns, "
+			+ "so wide rows or LOB columns are not transferred. " + "\n\n" + "Example: \n"
+			+ "| Row Should Not Exist In Table | MySampleTable | Name='John Doe' | \n"
+			+ "| Row Should Not Exist In Table | MySampleTable | Name=? | John Doe | " + "\n\n"
 			+ "This keyword was introduced in version 1.1. ")
-	@ArgumentNames({ "Table to check", "Where clause" })
+	@ArgumentNames({ "Table to check", "Where clause", "*Parameters" })
+	public void rowShouldNotExistInTable(String tableName, String whereClause, List<Object> parameters)
+			throws SQLException, DatabaseLibraryException {
+		if (rowExists(tableName, whereClause, parameters)) {
+			throw new DatabaseLibraryException(
+					"Row exists (but should not) for where-clause: " + whereClause + " in table: " + tableName);
+		}
+	}
+
 	public void rowShouldNotExistInTable(String tableName, String whereClause)
 			throws SQLException, DatabaseLibraryException {
+		rowShouldNotExistInTable(tableName, whereClause, null);
+	}
 
-		String sql = "select * from " + tableName + " where " + whereClause;
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
-		try {
-			stmt.executeQuery(sql);
-			ResultSet rs = (ResultSet) stmt.getResultSet();
-			if (rs.next() == true) {
-				throw new DatabaseLibraryException(
-						"Row exists (but should not) for where-clause: " + whereClause + " in table: " + tableName);
-			}
-		} finally {
-			stmt.close();
+	@RobotKeyword("Checks that at least one row matching the where-clause exists in the given table. "
+			+ "The where-clause can contain ? placeholders, which are bound to the given parameters in "
+			+ "the given order. Like with 'Row Should Not Exist In Table', at most one row and no columns "
+			+ "are read. " + "\n\n" + "Example: \n"
+			+ "| Row Should Exist In Table | MySampleTable | Name='John Doe' | \n"
+			+ "| Row Should Exist In Table | MySampleTable | Id=? | ${1} | ")
+	@ArgumentNames({ "Table to check", "Where clause", "*Parameters" })
+	public void rowShouldExistInTable(String tableName, String whereClause, List<Object> parameters)
+			throws SQLException, DatabaseLibraryException {
+		if (!rowExists(tableName, whereClause, parameters)) {
+			throw new DatabaseLibraryException(
+					"Row does not exist (but should) for where-clause: " + whereClause + " in table: " + tableName);
 		}
 	}
-	
+
+	public void rowShouldExistInTable(String tableName, String whereClause)
+			throws SQLException, DatabaseLibraryException {
+		rowShouldExistInTable(tableName, whereClause, null);
+	}
+
 	@RobotKeyword("Checks that the given table has no rows. It is a convenience way of using "
 			+ "the 'Table Must Contain Number Of Rows' with zero for the amount of rows.\n\n" + "Example: \n"
 			+ "| Table Must Be Empty | MySampleTable |")
@@ -200,7 +209,8 @@ public class Assert {
 
 		long num = getNumberOfRows(tableName, rowNum);
 		if (num >= rowNum) {
-			throw new DatabaseLibraryException("Expecting less than" + rowNum + " rows, fetched: " + num);
+			throw new DatabaseLibraryException(
+					"Expecting less than" + rowNum + " rows, fetched: " + describeNumberOfRows(num, rowNum));
 		}
 	}
 	
@@ -232,7 +242,8 @@ public class Assert {
 
 		long num = getNumberOfRows(tableName, rowNum + 1);
 		if (num != rowNum) {
-			throw new DatabaseLibraryException("Expecting " + rowNum + " rows, fetched: " + num);
+			throw new DatabaseLibraryException(
+					"Expecting " + rowNum + " rows, fetched: " + describeNumberOfRows(num, rowNum + 1));
 		}
 	}
 
@@ -297,9 +308,29 @@ public class Assert {
 
 		long rowNum = Long.valueOf(rowNumValue);
 
-		long num = getNumberOfRows(tableName, where, (rowNum + 1));
+		long num = getNumberOfRows(tableName, where, null, (rowNum + 1));
 		if (num != rowNum) {
-			throw new DatabaseLibraryException("Expecting " + rowNum + " rows, fetched: " + num);
+			throw new DatabaseLibraryException(
+					"Expecting " + rowNum + " rows, fetched: " + describeNumberOfRows(num, rowNum + 1));
+		}
+	}
+
+	@RobotKeyword("This keyword checks that a given table contains a given amount of rows "
+			+ "matching a given WHERE clause, which can contain ? placeholders bound to the given "
+			+ "parameters in the given order. Compared to 'Verify Number Of Rows Matching Where' the "
+			+ "SQL text stays the same for all the values, so the database can reuse the execution plan. "
+			+ "\n\n" + "Example: \n"
+			+ "| Verify Number Of Rows Matching Where With Parameters | MySampleTable | email=? | 2 | x@y.net | ")
+	@ArgumentNames({ "Table to check", "Where clause", "Expected number of rows", "*Parameters" })
+	public void verifyNumberOfRowsMatchingWhereWithParameters(String tableName, String where, String rowNumValue,
+			List<Object> parameters) throws SQLException, DatabaseLibraryException {
+
+		long rowNum = Long.valueOf(rowNumValue);
+
+		long num = getNumberOfRows(tableName, where, parameters, (rowNum + 1));
+		if (num != rowNum) {
+			throw new DatabaseLibraryException(
+					"Expecting " + rowNum + " rows, fetched: " + describeNumberOfRows(num, rowNum + 1));
 		}
 	}
 
@@ -308,53 +339,42 @@ public class Assert {
 	}
 	
 	private long getNumberOfRows(String tableName, long limit) throws SQLException {
-		return getNumberOfRows(tableName, null, limit);
+		return getNumberOfRows(tableName, null, null, limit);
 	}
 	
-	private long getNumberOfRows(String tableName, String where, long limit) throws SQLException {
-
-		// Let's first try with count(*), but this is not supported by all
-		// databases.
-		// In this case an exception will be thrown and we will read the amount
-		// of records the "hard way", but luckily limited by the amount of rows
-		// expected,
-		// so that this might not be too bad.
-		long num = -1;
-		try {
-			String sql = "select count(*) from " + tableName;
-			if (where != null) {
-				sql = sql + " where " + where;
-			}
-			Statement stmt = DatabaseConnection.getConnection().createStatement();
-			try {
-				stmt.executeQuery(sql);
-				ResultSet rs = (ResultSet) stmt.getResultSet();
-				rs.next();
-				num = rs.getLong("count(*)");
-			} finally {
-				// stmt.close() automatically takes care of its ResultSet, so no
-				// rs.close()
-				stmt.close();
-			}
-		} catch (SQLException e) {
-			String sql = "select * from " + tableName;
-			if (where != null) {
-				sql = sql + " where " + where;
+	/**
+	 * Returns the amount of rows, counted only up to the limit, so that
+	 * bounded checks don't count the whole table.
+	 */
+	private long getNumberOfRows(String tableName, String where, List<Object> parameters, long limit)
+			throws SQLException {
+		return new RowCounter(DatabaseConnection.getConnection()).count(tableName, where, parameters, limit);
+	}
+
+	private void checkValues(ResultSet rs, String[] columns, String[] values)
+			throws SQLException, DatabaseLibraryException {
+		for (int i = 0; i < columns.length; i++) {
+			String fieldValue = rs.getString(columns[i]);
+			System.out.println(columns[i] + " -> " + fieldValue);
+
+			if (values[i].equals("(NULL)")) {
+				values[i] = "";
 			}
-			Statement stmt = DatabaseConnection.getConnection().createStatement();
-			try {
-				stmt.executeQuery(sql);
-				ResultSet rs = (ResultSet) stmt.getResultSet();
-				num = 0;
-				while ((rs.next()) && (num < limit)) {
-					num++;
-				}
-			} finally {
-				// stmt.close() automatically takes care of its ResultSet, so no
-				// rs.close()
-				stmt.close();
+
+			if (!fieldValue.equals(values[i])) {
+				throw new DatabaseLibraryException("Value found: '" + fieldValue + "'. Expected: '" + values[i] + "'");
 			}
 		}
-		return num;
+	}
+
+	private boolean rowExists(String tableName, String whereClause, List<Object> parameters) throws SQLException {
+		if (parameters != null && parameters.isEmpty()) {
+			parameters = null;
+		}
+		return getNumberOfRows(tableName, whereClause, parameters, 1) > 0;
+	}
+
+	private String describeNumberOfRows(long num, long limit) {
+		return num >= limit ? "at least " + limit : String.valueOf(num);
 	}
 }
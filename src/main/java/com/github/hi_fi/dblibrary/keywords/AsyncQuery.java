@@ -0,0 +1,127 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * SQL statement executed in the background while the keywords go on. Each
+ * statement has a connection of its own, borrowed with
+ * {@link DatabaseConnection#borrowSeparateConnection(String)}, as JDBC
+ * connections must not be used by two threads at the same time. Statements
+ * are executed on virtual threads when the JVM has them (Java 21 and later),
+ * otherwise on daemon threads of a cached pool.
+ */
+class AsyncQuery {
+
+	private static final ExecutorService executor = createExecutor();
+
+	private final String alias;
+	private final String sql;
+	private final StatementOptions options;
+	private final Future<List<LinkedHashMap<String, Object>>> result;
+	private volatile Statement running;
+	private volatile boolean cancelled = false;
+
+	AsyncQuery(String alias, String sql, StatementOptions options) {
+		this.alias = alias;
+		this.sql = sql;
+		this.options = options;
+		this.result = executor.submit(new Callable<List<LinkedHashMap<String, Object>>>() {
+			@Override
+			public List<LinkedHashMap<String, Object>> call() throws SQLException {
+				return execute();
+			}
+		});
+	}
+
+	/**
+	 * Waits for the statement to complete and returns its result rows. With
+	 * positive timeout (in seconds) waits at most that long, and fails with
+	 * {@link TimeoutException} if the statement is still running.
+	 */
+	List<LinkedHashMap<String, Object>> await(int timeout)
+			throws SQLException, DatabaseLibraryException, TimeoutException {
+		try {
+			return timeout > 0 ? result.get(timeout, TimeUnit.SECONDS) : result.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new DatabaseLibraryException("Error executing: " + sql + "\n" + e.getCause().getMessage());
+		} catch (CancellationException e) {
+			throw new DatabaseLibraryException("Execution cancelled: " + sql);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseLibraryException("Interrupted while waiting for: " + sql);
+		}
+	}
+
+	/**
+	 * Cancels the statement in the database if it's running, or prevents it
+	 * from starting if it's still waiting for a thread.
+	 */
+	void cancel() {
+		cancelled = true;
+		result.cancel(false);
+		Statement stmt = running;
+		if (stmt != null) {
+			try {
+				stmt.cancel();
+			} catch (SQLException e) {
+				// Statement completed or was closed in the meantime
+			}
+		}
+	}
+
+	private List<LinkedHashMap<String, Object>> execute() throws SQLException {
+		Connection connection = DatabaseConnection.borrowSeparateConnection(alias);
+		try {
+			Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			try {
+				options.applyTo(stmt);
+				running = stmt;
+				if (cancelled) {
+					throw new SQLException("Execution cancelled before: " + sql);
+				}
+				Statements.executeWithTimeout(stmt, sql, options.getQueryTimeout());
+				ResultSet rs = stmt.getResultSet();
+				if (rs == null) {
+					return new ArrayList<LinkedHashMap<String, Object>>();
+				}
+				return Statements.readRows(rs, Integer.MAX_VALUE);
+			} finally {
+				running = null;
+				stmt.close();
+			}
+		} finally {
+			DatabaseConnection.returnConnection(alias, connection);
+			if (!ResultCache.isReadQuery(sql)) {
+				ResultCache.invalidate(alias);
+			}
+		}
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			// Virtual threads are not available before Java 21
+			return Executors.newCachedThreadPool(new DaemonThreadFactory("dblibrary-async-sql"));
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Pool of physical connections for one database alias. Connections are
+ * borrowed by the keywords and returned when keyword has been executed.
+ * Connections idle for longer than {@link #VALIDATION_IDLE_MILLIS} are
+ * validated before they are handed out again, as connections are borrowed for
+ * every keyword, and connections idle or alive for too long are evicted in
+ * the background.
+ */
+class ConnectionPool {
+
+	private static final long BORROW_TIMEOUT_MILLIS = 30000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+	static final long VALIDATION_IDLE_MILLIS = 5000;
+
+	private final ConnectionSettings settings;
+	private final int minSize;
+	private final int maxSize;
+	private final String validationQuery;
+	private final long idleTimeoutMillis;
+	private final long maxLifetimeMillis;
+
+	private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+	private final Map<Connection, PooledConnection> borrowedConnections = new ConcurrentHashMap<Connection, PooledConnection>();
+	private final Semaphore permits;
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed = false;
+
+	private final AtomicInteger openCount = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong evictedCount = new AtomicLong();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	ConnectionPool(ConnectionSettings settings, int minSize, int maxSize, String validationQuery,
+			long idleTimeoutMillis, long maxLifetimeMillis) throws SQLException {
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid pool size: minimum %d, maximum %d. Maximum must be at least 1 and not less than minimum.",
+					minSize, maxSize));
+		}
+		this.settings = settings;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.validationQuery = validationQuery;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.maxLifetimeMillis = maxLifetimeMillis;
+		this.permits = new Semaphore(maxSize, true);
+
+		try {
+			fillToMinimum();
+		} catch (SQLException e) {
+			closeIdleConnections();
+			throw e;
+		}
+
+		long evictionInterval = getEvictionInterval();
+		if (evictionInterval > 0) {
+			evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("dblibrary-pool-evictor"));
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictIdleConnections();
+				}
+			}, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+		} else {
+			evictor = null;
+		}
+	}
+
+	Connection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool has been closed");
+		}
+		if (!permits.tryAcquire()) {
+			waitCount.incrementAndGet();
+			boolean acquired;
+			try {
+				acquired = permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a pooled connection");
+			}
+			if (!acquired) {
+				timeoutCount.incrementAndGet();
+				throw new SQLException(String.format(
+						"Timed out after %d ms waiting for a connection. All %d pooled connections are in use.",
+						BORROW_TIMEOUT_MILLIS, maxSize));
+			}
+		}
+		try {
+			PooledConnection pooled;
+			while ((pooled = idleConnections.pollFirst()) != null) {
+				if (isUsableOnBorrow(pooled)) {
+					break;
+				}
+				discard(pooled);
+				evictedCount.incrementAndGet();
+			}
+			if (pooled == null) {
+				pooled = create();
+			}
+			pooled.lastUsed = System.currentTimeMillis();
+			borrowedConnections.put(pooled.connection, pooled);
+			borrowCount.incrementAndGet();
+			return pooled.connection;
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	void release(Connection connection) {
+		PooledConnection pooled = borrowedConnections.remove(connection);
+		if (pooled == null) {
+			return;
+		}
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if (closed || isExpired(pooled, System.currentTimeMillis())) {
+				discard(pooled);
+			} else {
+				pooled.lastUsed = System.currentTimeMillis();
+				idleConnections.offerFirst(pooled);
+			}
+		} catch (SQLException e) {
+			discard(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	void close() {
+		closed = true;
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+		closeIdleConnections();
+		for (PooledConnection pooled : new ArrayList<PooledConnection>(borrowedConnections.values())) {
+			borrowedConnections.remove(pooled.connection);
+			discard(pooled);
+		}
+	}
+
+	Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("min", minSize);
+		statistics.put("max", maxSize);
+		statistics.put("open", openCount.get());
+		statistics.put("idle", idleConnections.size());
+		statistics.put("active", borrowedConnections.size());
+		statistics.put("waiting", permits.getQueueLength());
+		statistics.put("borrows", borrowCount.get());
+		statistics.put("created", createdCount.get());
+		statistics.put("evicted", evictedCount.get());
+		statistics.put("waits", waitCount.get());
+		statistics.put("timeouts", timeoutCount.get());
+		return statistics;
+	}
+
+	void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		List<PooledConnection> candidates = new ArrayList<PooledConnection>(idleConnections);
+		// Oldest idle connections are at the end of the deque
+		for (int i = candidates.size() - 1; i >= 0; i--) {
+			PooledConnection pooled = candidates.get(i);
+			boolean idleTooLong = idleTimeoutMillis > 0 && now - pooled.lastUsed > idleTimeoutMillis
+					&& openCount.get() > minSize;
+			if ((idleTooLong || isExpired(pooled, now)) && idleConnections.remove(pooled)) {
+				discard(pooled);
+				evictedCount.incrementAndGet();
+			}
+		}
+		refill();
+	}
+
+	/**
+	 * Validates all idle connections, closing the ones that don't respond, and
+	 * opens new ones if pool went below its minimum size.
+	 */
+	void validateIdleConnections() {
+		for (PooledConnection pooled : new ArrayList<PooledConnection>(idleConnections)) {
+			if (idleConnections.remove(pooled)) {
+				if (isUsable(pooled)) {
+					idleConnections.offerLast(pooled);
+				} else {
+					discard(pooled);
+					evictedCount.incrementAndGet();
+				}
+			}
+		}
+		refill();
+	}
+
+	private void refill() {
+		try {
+			fillToMinimum();
+		} catch (SQLException e) {
+			System.out.println("Could not refill connection pool for " + settings.getConnectString() + ": "
+					+ e.getMessage());
+		}
+	}
+
+	private void fillToMinimum() throws SQLException {
+		while (!closed && openCount.get() < minSize) {
+			idleConnections.offerLast(create());
+		}
+	}
+
+	private long getEvictionInterval() {
+		long shortest = 0;
+		for (long timeout : new long[] { idleTimeoutMillis, maxLifetimeMillis }) {
+			if (timeout > 0 && (shortest == 0 || timeout < shortest)) {
+				shortest = timeout;
+			}
+		}
+		return shortest == 0 ? 0 : Math.max(1000, shortest / 2);
+	}
+
+	/**
+	 * Validates the connection only if it has been idle long enough to have
+	 * been dropped, as a round trip on every borrow would slow down every
+	 * keyword.
+	 */
+	private boolean isUsableOnBorrow(PooledConnection pooled) {
+		long now = System.currentTimeMillis();
+		if (now - pooled.lastUsed > VALIDATION_IDLE_MILLIS) {
+			return isUsable(pooled);
+		}
+		try {
+			return !isExpired(pooled, now) && !pooled.connection.isClosed();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean isUsable(PooledConnection pooled) {
+		if (isExpired(pooled, System.currentTimeMillis())) {
+			return false;
+		}
+		try {
+			if (StringUtils.isEmpty(validationQuery)) {
+				return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+			}
+			Statement stmt = pooled.connection.createStatement();
+			try {
+				stmt.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+				stmt.execute(validationQuery);
+			} finally {
+				stmt.close();
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean isExpired(PooledConnection pooled, long now) {
+		return maxLifetimeMillis > 0 && now - pooled.created > maxLifetimeMillis;
+	}
+
+	private PooledConnection create() throws SQLException {
+		PooledConnection pooled = new PooledConnection(settings.open());
+		openCount.incrementAndGet();
+		createdCount.incrementAndGet();
+		return pooled;
+	}
+
+	private void discard(PooledConnection pooled) {
+		openCount.decrementAndGet();
+		StatementCache.remove(pooled.connection);
+		try {
+			pooled.connection.close();
+		} catch (SQLException e) {
+			// Connection is thrown away anyway
+		}
+	}
+
+	private void closeIdleConnections() {
+		PooledConnection pooled;
+		while ((pooled = idleConnections.pollFirst()) != null) {
+			discard(pooled);
+		}
+	}
+
+	private static class PooledConnection {
+		final Connection connection;
+		final long created;
+		volatile long lastUsed;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.created = System.currentTimeMillis();
+			this.lastUsed = created;
+		}
+	}
+}
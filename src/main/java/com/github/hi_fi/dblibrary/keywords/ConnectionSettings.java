@@ -0,0 +1,51 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Parameters given to 'Connect To Database'. Kept so that new physical
+ * connections can be opened later on with the same settings, e.g. when a
+ * connection pool grows.
+ */
+class ConnectionSettings {
+
+	private final Driver driver;
+	private final String connectString;
+	private final String dbUser;
+	private final String dbPassword;
+
+	ConnectionSettings(Driver driver, String connectString, String dbUser, String dbPassword) {
+		this.driver = driver;
+		this.connectString = connectString;
+		this.dbUser = dbUser;
+		this.dbPassword = dbPassword;
+	}
+
+	String getConnectString() {
+		return connectString;
+	}
+
+	/**
+	 * Opens the connection directly with the driver instead of
+	 * DriverManager, as DriverManager refuses drivers loaded from separate
+	 * class loaders.
+	 */
+	Connection open() throws SQLException {
+		Properties info = new Properties();
+		if (dbUser != null) {
+			info.put("user", dbUser);
+		}
+		if (dbPassword != null) {
+			info.put("password", dbPassword);
+		}
+		Connection connection = driver.connect(connectString, info);
+		if (connection == null) {
+			throw new SQLException(String.format("Driver %s does not accept connection string %s",
+					driver.getClass().getName(), connectString), "08001");
+		}
+		return connection;
+	}
+}
@@ -0,0 +1,128 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 style CSV records one at a time, so that only the record
+ * being read is kept in memory. Fields can be quoted with double quotes, and
+ * quoted fields can contain delimiters, line breaks and doubled quotes.
+ * <p>
+ * Like in PostgreSQL COPY, an empty unquoted field is read as null, and an
+ * empty quoted field ("") as an empty string. An empty line is a record of
+ * one null field, so that single column rows of null survive a round trip
+ * through {@link CsvWriter}.
+ */
+class CsvReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final char QUOTE = '"';
+
+	private final Reader reader;
+	private final char delimiter;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private int lineNumber = 1;
+
+	CsvReader(Reader reader, char delimiter) {
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Returns the fields of the next record, or null at the end of the input.
+	 */
+	List<String> readRecord() throws IOException {
+		int c = read();
+		if (c == -1) {
+			return null;
+		}
+		List<String> fields = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			value.setLength(0);
+			boolean quoted = c == QUOTE;
+			if (quoted) {
+				int startLine = lineNumber;
+				while (true) {
+					c = read();
+					if (c == -1) {
+						throw new IOException("Unterminated quoted field starting at line " + startLine);
+					}
+					if (c == QUOTE) {
+						c = read();
+						if (c != QUOTE) {
+							break;
+						}
+					} else if (c == '\n') {
+						lineNumber++;
+					}
+					value.append((char) c);
+				}
+				if (c != delimiter && c != '\r' && c != '\n' && c != -1) {
+					throw new IOException("Unexpected character after quoted field at line " + lineNumber);
+				}
+			} else {
+				while (c != delimiter && c != '\r' && c != '\n' && c != -1) {
+					value.append((char) c);
+					c = read();
+				}
+			}
+			fields.add(quoted || value.length() > 0 ? value.toString() : null);
+			if (c != delimiter) {
+				if (c != -1) {
+					endLine(c);
+				}
+				return fields;
+			}
+			c = read();
+		}
+	}
+
+	/**
+	 * Returns the number of the line the next record starts at.
+	 */
+	int getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Consumes the rest of the line break (\r\n, \n or \r) starting with the
+	 * given character.
+	 */
+	private void endLine(int c) throws IOException {
+		lineNumber++;
+		if (c == '\r' && peek() == '\n') {
+			position++;
+		}
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		if (c != -1) {
+			position++;
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (position >= limit) {
+			int read = reader.read(buffer, 0, buffer.length);
+			if (read <= 0) {
+				return -1;
+			}
+			position = 0;
+			limit = read;
+		}
+		return buffer[position];
+	}
+}
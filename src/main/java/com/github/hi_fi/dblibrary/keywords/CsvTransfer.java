@@ -0,0 +1,269 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Loads CSV files into tables and unloads tables into CSV files, streaming
+ * the rows so that files of any size are handled in constant memory. Rows
+ * are loaded with {@link RowInserter}, and unloaded with a forward-only
+ * result set. With PostgreSQL the driver's CopyManager is used instead, found
+ * by reflection so that the driver is not needed at compile time.
+ */
+class CsvTransfer {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+
+	private final Connection connection;
+	private final char delimiter;
+
+	CsvTransfer(Connection connection, String delimiter) {
+		if (delimiter == null || delimiter.length() != 1) {
+			throw new IllegalArgumentException(
+					String.format("CSV delimiter must be a single character, got '%s'", delimiter));
+		}
+		this.connection = connection;
+		this.delimiter = delimiter.charAt(0);
+	}
+
+	/**
+	 * Parses column mapping given as "Header=Column" pairs separated with
+	 * commas. Header mapped to nothing ("Header=") is not loaded.
+	 */
+	static Map<String, String> parseColumnMapping(String mapping) {
+		Map<String, String> columns = new LinkedHashMap<String, String>();
+		if (StringUtils.isBlank(mapping)) {
+			return columns;
+		}
+		for (String pair : mapping.split(",")) {
+			int separator = pair.indexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException(
+						String.format("Column mapping must be given as Header=Column pairs, got '%s'", pair));
+			}
+			columns.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+		}
+		return columns;
+	}
+
+	/**
+	 * Loads the rows of the file into the table. First row of the file is a
+	 * header naming the column of each field, unless mapped to another
+	 * column. Returns the amount of loaded rows.
+	 */
+	int load(String fileName, String tableName, Map<String, String> columnMapping, int batchSize,
+			int commitInterval) throws IOException, SQLException, DatabaseLibraryException {
+		CsvReader csv = new CsvReader(Files.newBufferedReader(Paths.get(fileName), CHARSET), delimiter);
+		try {
+			List<String> header = csv.readRecord();
+			if (header == null) {
+				return 0;
+			}
+			List<String> columns = new ArrayList<String>();
+			List<Integer> fieldIndexes = new ArrayList<Integer>();
+			for (int i = 0; i < header.size(); i++) {
+				String name = StringUtils.trimToEmpty(header.get(i));
+				String column = columnMapping.containsKey(name) ? columnMapping.get(name) : name;
+				if (column.isEmpty()) {
+					continue;
+				}
+				columns.add(column);
+				fieldIndexes.add(i);
+			}
+			RowInserter inserter = new RowInserter(connection, tableName);
+			Object copyManager = commitInterval <= 0 && columns.size() == header.size() ? getCopyManager() : null;
+			if (copyManager != null) {
+				String sql = String.format("COPY %s (%s) FROM STDIN WITH (FORMAT csv, HEADER true, DELIMITER %s)",
+						tableName, inserter.getColumnList(columns), getDelimiterLiteral());
+				System.out.println("Loading with PostgreSQL COPY: " + sql);
+				csv.close();
+				Reader reader = Files.newBufferedReader(Paths.get(fileName), CHARSET);
+				try {
+					return (int) copy(copyManager, "copyIn", sql, reader, Reader.class);
+				} finally {
+					reader.close();
+				}
+			}
+			try {
+				return inserter.insert(new CsvRows(csv, header.size(), columns, fieldIndexes), batchSize,
+						commitInterval);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	/**
+	 * Writes the rows of the table matching the where-clause (if given) into
+	 * the file, with a header of column names. Returns the amount of rows
+	 * written.
+	 */
+	int unload(String tableName, String where, String fileName) throws IOException, SQLException {
+		String query = "SELECT * FROM " + tableName;
+		if (!StringUtils.isEmpty(where)) {
+			query += " WHERE " + where;
+		}
+		Writer writer = Files.newBufferedWriter(Paths.get(fileName), CHARSET);
+		try {
+			Object copyManager = getCopyManager();
+			if (copyManager != null) {
+				String sql = String.format("COPY (%s) TO STDOUT WITH (FORMAT csv, HEADER true, DELIMITER %s)", query,
+						getDelimiterLiteral());
+				System.out.println("Unloading with PostgreSQL COPY: " + sql);
+				return (int) copy(copyManager, "copyOut", sql, writer, Writer.class);
+			}
+			return unload(query, new CsvWriter(writer, delimiter));
+		} finally {
+			writer.close();
+		}
+	}
+
+	private int unload(String query, CsvWriter csv) throws IOException, SQLException {
+		StatementOptions options = DatabaseConnection.getStatementOptions().withoutMaxRows();
+		if (options.getFetchSize() <= 0) {
+			options = options.override(String.valueOf(DEFAULT_FETCH_SIZE), null, null);
+		}
+		Statement stmt = Statements.execute(connection, query, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY, options);
+		try {
+			ResultSet rs = stmt.getResultSet();
+			ResultSetMetaData rsmd = rs.getMetaData();
+			String[] values = new String[rsmd.getColumnCount()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = rsmd.getColumnLabel(i + 1);
+			}
+			csv.writeRecord(values);
+			int rows = 0;
+			while (rs.next()) {
+				for (int i = 0; i < values.length; i++) {
+					values[i] = rs.getString(i + 1);
+				}
+				csv.writeRecord(values);
+				rows++;
+			}
+			return rows;
+		} finally {
+			Statements.release(stmt);
+		}
+	}
+
+	private String getDelimiterLiteral() {
+		return delimiter == '\'' ? "''''" : "'" + delimiter + "'";
+	}
+
+	/**
+	 * Returns the CopyManager of the connection if it's a PostgreSQL
+	 * connection, otherwise null.
+	 */
+	private Object getCopyManager() {
+		try {
+			Class<?> pgConnection = Class.forName("org.postgresql.PGConnection", false,
+					connection.getClass().getClassLoader());
+			if (!connection.isWrapperFor(pgConnection)) {
+				return null;
+			}
+			return pgConnection.getMethod("getCopyAPI").invoke(connection.unwrap(pgConnection));
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			// Driver or pool doesn't give access to the CopyManager, rows are
+			// transferred with plain JDBC instead
+			return null;
+		}
+	}
+
+	private long copy(Object copyManager, String method, String sql, Object stream, Class<?> streamType)
+			throws SQLException, IOException {
+		try {
+			return (Long) copyManager.getClass().getMethod(method, String.class, streamType).invoke(copyManager, sql,
+					stream);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new SQLException(cause.getMessage(), cause);
+		} catch (ReflectiveOperationException e) {
+			throw new SQLException("PostgreSQL CopyManager could not be used: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Records of the CSV file as maps of column name to value, read as they
+	 * are iterated.
+	 */
+	private static class CsvRows implements Iterator<Object> {
+
+		private final CsvReader csv;
+		private final int fieldCount;
+		private final List<String> columns;
+		private final List<Integer> fieldIndexes;
+		private List<String> record;
+		private int recordLine;
+		private boolean ended = false;
+
+		CsvRows(CsvReader csv, int fieldCount, List<String> columns, List<Integer> fieldIndexes) {
+			this.csv = csv;
+			this.fieldCount = fieldCount;
+			this.columns = columns;
+			this.fieldIndexes = fieldIndexes;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (record == null && !ended) {
+				try {
+					recordLine = csv.getLineNumber();
+					record = csv.readRecord();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				ended = record == null;
+			}
+			return record != null;
+		}
+
+		@Override
+		public Object next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (record.size() != fieldCount) {
+				throw new UncheckedIOException(new IOException(String.format("Line %d has %d fields, expected %d",
+						recordLine, record.size(), fieldCount)));
+			}
+			Map<String, Object> row = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < columns.size(); i++) {
+				row.put(columns.get(i), record.get(fieldIndexes.get(i)));
+			}
+			record = null;
+			return row;
+		}
+	}
+}
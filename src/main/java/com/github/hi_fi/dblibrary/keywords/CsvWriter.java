@@ -0,0 +1,68 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes CSV records in the format read by {@link CsvReader}: fields
+ * containing the delimiter, quotes or line breaks are quoted, null is written
+ * as an empty field and an empty string as "". A record of a single null is
+ * thus an empty line, and a record of a single empty string a line of "".
+ */
+class CsvWriter implements Closeable {
+
+	private static final char QUOTE = '"';
+
+	private final Writer writer;
+	private final char delimiter;
+
+	CsvWriter(Writer writer, char delimiter) {
+		this.writer = writer;
+		this.delimiter = delimiter;
+	}
+
+	void writeRecord(String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(delimiter);
+			}
+			writeField(values[i]);
+		}
+		writer.write('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	private void writeField(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (!value.isEmpty() && !needsQuotes(value)) {
+			writer.write(value);
+			return;
+		}
+		writer.write(QUOTE);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == QUOTE) {
+				writer.write(QUOTE);
+			}
+			writer.write(c);
+		}
+		writer.write(QUOTE);
+	}
+
+	private boolean needsQuotes(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == delimiter || c == QUOTE || c == '\r' || c == '\n') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,25 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that background work of the library never
+ * keeps Robot Framework (or remote server) process alive.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private final String namePrefix;
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	DaemonThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
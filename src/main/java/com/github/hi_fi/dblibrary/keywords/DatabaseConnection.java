@@ -1,13 +1,26 @@
 package com.github.hi_fi.dblibrary.keywords;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.StringUtils;
 import org.robotframework.javalib.annotation.ArgumentNames;
 import org.robotframework.javalib.annotation.RobotKeyword;
 import org.robotframework.javalib.annotation.RobotKeywords;
@@ -15,24 +28,79 @@ import org.robotframework.javalib.annotation.RobotKeywords;
 @RobotKeywords
 public class DatabaseConnection {
 
-	private static String currentConnectionAlias = "";
+	private static final String[] CONNECTION_DEFINITION_KEYS = { "driver", "url", "user", "password", "alias",
+			"maxPoolSize", "minPoolSize", "validationQuery", "idleTimeout", "maxLifetime", "driverJar" };
+
+	private static final String[] CONNECTION_DEFINITION_DEFAULTS = { null, null, null, null, "default", "0", "0", "",
+			"600", "1800", "" };
+
+	private static final AtomicReference<String> currentConnectionAlias = new AtomicReference<String>("");
+
+	private static final ThreadLocal<String> threadConnectionAlias = new ThreadLocal<String>();
+
+	private static final ConcurrentMap<String, ManagedConnection> connectionMap = new ConcurrentHashMap<String, ManagedConnection>();
+
+	private static final ConcurrentMap<String, ConnectionPool> poolMap = new ConcurrentHashMap<String, ConnectionPool>();
+
+	private static final ConcurrentMap<String, StatementOptions> statementOptionsMap = new ConcurrentHashMap<String, StatementOptions>();
+
+	private static final ConcurrentMap<String, TestTransaction> transactionMap = new ConcurrentHashMap<String, TestTransaction>();
+
+	private static final ConcurrentMap<String, ScheduledFuture<?>> keepaliveTasks = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+	private static final ScheduledExecutorService keepaliveScheduler = Executors
+			.newSingleThreadScheduledExecutor(new DaemonThreadFactory("dblibrary-keepalive"));
 
-	private static Map<String, Connection> connectionMap = new HashMap<String, Connection>();
+	private static final ThreadLocal<Map<String, Connection>> borrowedConnections = new ThreadLocal<Map<String, Connection>>() {
+		@Override
+		protected Map<String, Connection> initialValue() {
+			return new HashMap<String, Connection>();
+		}
+	};
+
+	// Single connections checked out by the keyword executing in the thread
+	private static final ThreadLocal<Map<String, ManagedConnection>> checkedOutConnections = new ThreadLocal<Map<String, ManagedConnection>>() {
+		@Override
+		protected Map<String, ManagedConnection> initialValue() {
+			return new HashMap<String, ManagedConnection>();
+		}
+	};
 
 	public DatabaseConnection() {
 	}
 
 	@RobotKeyword("Activates the database connection with given alias. \n"
-			+ "Please note that connection has to be opened earlier.\n\n" + "Example: \n"
-			+ "| Activate Database Connection | ownAlias |")
-	@ArgumentNames({ "Database alias=default" })
-	public void activateDatabaseConnection(String alias) {
-		if (DatabaseConnection.connectionMap.containsKey(alias)) {
-			DatabaseConnection.currentConnectionAlias = alias;
-		} else {
+			+ "Please note that connection has to be opened earlier.\n\n"
+			+ "By default (scope _global_) the alias is activated for the whole library. With scope _thread_ "
+			+ "the alias is activated only for the calling thread, and other threads keep using the globally "
+			+ "active alias. Activating with global scope clears the thread scoped alias of calling thread.\n\n"
+			+ "Thread scoped alias lasts one keyword call: it's cleared when the keyword run through the "
+			+ "library ends, as remote server executes keywords of all clients in a shared pool of threads. "
+			+ "It's meant for Java code using the library within one keyword, e.g. keywords of another "
+			+ "library running several queries with their own alias while other threads use the library. "
+			+ "From Robot Framework, parallel clients should refer to their own aliases, or share one pooled "
+			+ "alias.\n\n"
+			+ "Example: \n" + "| Activate Database Connection | ownAlias |\n"
+			+ "| Activate Database Connection | workerAlias | thread |")
+	@ArgumentNames({ "Database alias=default", "Scope=global" })
+	public void activateDatabaseConnection(String alias, String scope) {
+		if (!isConnected(alias)) {
 			throw new IllegalStateException(String.format(
 					"No connection open with alias %s. Did you forget to run 'Connect To Database' before?", alias));
 		}
+		if ("thread".equalsIgnoreCase(scope)) {
+			DatabaseConnection.threadConnectionAlias.set(alias);
+		} else if (StringUtils.isEmpty(scope) || "global".equalsIgnoreCase(scope)) {
+			DatabaseConnection.threadConnectionAlias.remove();
+			DatabaseConnection.currentConnectionAlias.set(alias);
+		} else {
+			throw new IllegalArgumentException(
+					String.format("Unknown scope %s. Scope must be either 'global' or 'thread'.", scope));
+		}
+	}
+
+	public void activateDatabaseConnection(String alias) {
+		activateDatabaseConnection(alias, "global");
 	}
 
 	@RobotKeyword("Establish the connection to the database. This is mandatory before any of"
@@ -40,18 +108,317 @@ public class DatabaseConnection {
 			+ "suite setup phase. To avoid problems ensure to close the connection again "
 			+ "using the disconnect-keyword.\n\n"
 			+ "It must be ensured that the JAR-file containing the given driver can be "
-			+ "found from the CLASSPATH when starting robot. Furthermore it must be "
+			+ "found from the CLASSPATH when starting robot, or path to the driver JAR-file must be given. "
+			+ "Driver given with JAR path is loaded with its own class loader, so different versions of the "
+			+ "same driver can be used side by side. Each driver is loaded and instantiated only once and "
+			+ "reused by later connects. Furthermore it must be "
 			+ "noted that the connection string is database-specific and must be valid of course.\n\n"
 			+ "If alias is given, connection can be later referred with that. If alias was in use, existing connection "
-			+ "is replaced with new one\n\n" + "" + "Example: \n"
-			+ "| Connect To Database | com.mysql.jdbc.Driver | jdbc:mysql://my.host.name/myinstance | UserName | ThePassword | default |")
+			+ "is replaced with new one. New connection is activated in the same scope that is currently "
+			+ "in effect for the calling thread (see 'Activate Database Connection').\n\n"
+			+ "If maximum pool size is greater than zero, a pool of connections is opened for the alias "
+			+ "instead of a single connection. Each keyword borrows a connection from the pool and returns "
+			+ "it when keyword has been executed, so parallel users (e.g. pabot workers using the same remote "
+			+ "server) don't have to queue for a single connection. Minimum amount of connections is kept open "
+			+ "all the time. Connections idle for more than 5 seconds are checked with validation query (or "
+			+ "JDBC isValid if no query is given) before they are handed out, so that keywords run one after "
+			+ "another don't pay a round trip each. Connections idle longer than idle timeout (above the "
+			+ "minimum size) or open longer than max lifetime are closed. Zero timeout disables the check. "
+			+ "Pool usage can be checked with 'Get Connection Pool Statistics'.\n\n" + "Example: \n"
+			+ "| Connect To Database | com.mysql.jdbc.Driver | jdbc:mysql://my.host.name/myinstance | UserName | ThePassword | default |\n"
+			+ "| Connect To Database | com.mysql.jdbc.Driver | jdbc:mysql://my.host.name/myinstance | UserName | ThePassword | pooled | 10 | 2 | SELECT 1 | 300 | 1800 |\n"
+			+ "| Connect To Database | com.mysql.jdbc.Driver | jdbc:mysql://my.host.name/myinstance | UserName | ThePassword | legacy | 0 | 0 | | 0 | 0 | /drivers/mysql-connector-java-5.1.49.jar |")
 	@ArgumentNames({ "Driver class name", "Connection string", "Database username", "Database password",
-			"Database alias=default" })
+			"Database alias=default", "Maximum pool size=0", "Minimum pool size=0", "Validation query=",
+			"Idle timeout in seconds=600", "Max lifetime in seconds=1800", "Driver jar path=" })
+	public void connectToDatabase(String driverClassName, String connectString, String dbUser, String dbPassword,
+			String alias, String maxPoolSize, String minPoolSize, String validationQuery, String idleTimeout,
+			String maxLifetime, String driverJarPath) throws SQLException, InstantiationException,
+			IllegalAccessException, ClassNotFoundException, IOException {
+		register(openConnection(driverClassName, connectString, dbUser, dbPassword, alias, maxPoolSize, minPoolSize,
+				validationQuery, idleTimeout, maxLifetime, driverJarPath));
+	}
+
 	public void connectToDatabase(String driverClassName, String connectString, String dbUser, String dbPassword,
-			String alias)
-			throws SQLException, InstantiationException, IllegalAccessException, ClassNotFoundException {
-		Class.forName(driverClassName).newInstance();
-		setConnection(DriverManager.getConnection(connectString, dbUser, dbPassword), alias);
+			String alias, String maxPoolSize, String minPoolSize, String validationQuery, String idleTimeout,
+			String maxLifetime) throws SQLException, InstantiationException, IllegalAccessException,
+			ClassNotFoundException, IOException {
+		connectToDatabase(driverClassName, connectString, dbUser, dbPassword, alias, maxPoolSize, minPoolSize,
+				validationQuery, idleTimeout, maxLifetime, "");
+	}
+
+	public void connectToDatabase(String driverClassName, String connectString, String dbUser, String dbPassword,
+			String alias) throws SQLException, InstantiationException, IllegalAccessException,
+			ClassNotFoundException, IOException {
+		connectToDatabase(driverClassName, connectString, dbUser, dbPassword, alias, "0", "0", "", "600", "1800", "");
+	}
+
+	@RobotKeyword("Establishes connections to several databases at the same time. Each connection "
+			+ "definition is either a list of the same arguments that 'Connect To Database' takes, in the same "
+			+ "order, or a dictionary with keys driver, url, user, password, alias, maxPoolSize, minPoolSize, "
+			+ "validationQuery, idleTimeout, maxLifetime and driverJar. Missing optional values get the same "
+			+ "defaults as in 'Connect To Database'.\n\n"
+			+ "Connections are opened in parallel using at most the given amount of threads, and registered "
+			+ "in the given order, so the last successfully opened alias is activated. If some connections "
+			+ "fail, the successful ones are still kept open and all the failures are reported in one error.\n\n"
+			+ "Example: \n"
+			+ "| @{first}= | Create List | org.h2.Driver | jdbc:h2:tcp://host1/db | sa | ${EMPTY} | first |\n"
+			+ "| &{second}= | Create Dictionary | driver=org.h2.Driver | url=jdbc:h2:tcp://host2/db | user=sa | password=${EMPTY} | alias=second |\n"
+			+ "| @{definitions}= | Create List | ${first} | ${second} |\n"
+			+ "| Connect To Databases | ${definitions} |")
+	@ArgumentNames({ "Connection definitions", "Maximum parallel connects=8" })
+	public void connectToDatabases(Object connectionDefinitions, String maxParallelConnects)
+			throws DatabaseLibraryException {
+		final List<String[]> definitions = new ArrayList<String[]>();
+		for (Object definition : toList(connectionDefinitions)) {
+			definitions.add(toConnectionDefinition(definition));
+		}
+		if (definitions.isEmpty()) {
+			return;
+		}
+		int threads = StringUtils.isEmpty(maxParallelConnects) ? 8 : Integer.valueOf(maxParallelConnects);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, definitions.size())),
+				new DaemonThreadFactory("dblibrary-connect"));
+		List<Future<OpenedConnection>> results = new ArrayList<Future<OpenedConnection>>();
+		try {
+			for (final String[] definition : definitions) {
+				results.add(executor.submit(new Callable<OpenedConnection>() {
+					@Override
+					public OpenedConnection call() throws Exception {
+						return openConnection(definition[0], definition[1], definition[2], definition[3],
+								definition[4], definition[5], definition[6], definition[7], definition[8],
+								definition[9], definition[10]);
+					}
+				}));
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		List<String> failures = new ArrayList<String>();
+		for (int i = 0; i < results.size(); i++) {
+			String alias = definitions.get(i)[4];
+			try {
+				register(results.get(i).get());
+			} catch (ExecutionException e) {
+				failures.add(alias + ": " + e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.add(alias + ": interrupted while connecting");
+			}
+		}
+		if (!failures.isEmpty()) {
+			throw new DatabaseLibraryException(String.format("%d of %d connections failed:\n%s", failures.size(),
+					definitions.size(), StringUtils.join(failures, "\n")));
+		}
+	}
+
+	@RobotKeyword("Sets the fetch size, maximum number of rows and query timeout used for the statements "
+			+ "executed with the connection of given alias. Zero keeps the driver's default fetch size, and "
+			+ "means no limit for rows and time. By default all of them are zero.\n\n"
+			+ "Fetch size tells the driver how many rows to get from the database at a time, e.g. Oracle "
+			+ "driver gets only 10 rows at a time by default. Maximum number of rows limits the rows returned "
+			+ "by 'Execute SQL', 'Execute SQL With Parameters' and 'Open Query Cursor'; other keywords need "
+			+ "all the rows to work correctly. Statement still running when the query timeout has passed is "
+			+ "cancelled and the keyword fails.\n\n"
+			+ "'Execute SQL' and 'Open Query Cursor' can override these for single statements.\n\n"
+			+ "Example: \n" + "| Set Statement Options | 500 | 10000 | 60 | default |")
+	@ArgumentNames({ "Fetch size=0", "Maximum number of rows=0", "Query timeout in seconds=0",
+			"Database alias=default" })
+	public void setStatementOptions(String fetchSize, String maxRows, String queryTimeout, String alias) {
+		if (!isConnected(alias)) {
+			throw new IllegalStateException(String.format(
+					"No connection open with alias %s. Did you forget to run 'Connect To Database' before?", alias));
+		}
+		DatabaseConnection.statementOptionsMap.put(alias,
+				new StatementOptions(Integer.valueOf(fetchSize), Integer.valueOf(maxRows), Integer.valueOf(queryTimeout)));
+	}
+
+	@RobotKeyword("Enables background keepalive for the connection with given alias. Every interval the "
+			+ "connection is checked if it hasn't been used during the interval, either with the given ping "
+			+ "query or with JDBC isValid if no query is given. Connections found dead are reopened with the "
+			+ "original 'Connect To Database' parameters. Connection is also checked before it's used if it has "
+			+ "been idle for the interval, so a connection dropped by a firewall or the database is reopened "
+			+ "transparently before the next keyword uses it.\n\n"
+			+ "Connection that has an open transaction (auto-commit disabled) is never pinged nor reopened, so "
+			+ "that the transaction is not lost silently. Neither is a connection in use by a running keyword "
+			+ "or an open query cursor, and its idle time starts when the use ends.\n\n"
+			+ "For pooled aliases idle connections in the pool are validated with the pool's validation "
+			+ "query each interval, and the ping query is ignored.\n\n"
+			+ "Interval of zero disables the keepalive.\n\n" + "Example: \n"
+			+ "| Set Connection Keepalive | 300 | SELECT 1 FROM DUAL | default |")
+	@ArgumentNames({ "Keepalive interval in seconds", "Ping query=", "Database alias=default" })
+	public void setConnectionKeepalive(String interval, String pingQuery, String alias) {
+		long intervalMillis = Long.valueOf(interval) * 1000;
+		final ManagedConnection connection = DatabaseConnection.connectionMap.get(alias);
+		final ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (connection == null && pool == null) {
+			throw new IllegalStateException(String.format(
+					"No connection open with alias %s. Did you forget to run 'Connect To Database' before?", alias));
+		}
+		cancelKeepalive(alias);
+		if (connection != null) {
+			connection.setKeepalive(intervalMillis, pingQuery);
+		}
+		if (intervalMillis > 0) {
+			Runnable keepalive = new Runnable() {
+				@Override
+				public void run() {
+					if (connection != null) {
+						connection.keepAlive();
+					} else {
+						pool.validateIdleConnections();
+					}
+				}
+			};
+			ScheduledFuture<?> previous = DatabaseConnection.keepaliveTasks.put(alias, DatabaseConnection.keepaliveScheduler
+					.scheduleWithFixedDelay(keepalive, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+			if (previous != null) {
+				previous.cancel(false);
+			}
+		}
+	}
+
+	@RobotKeyword("Sets the size of the prepared statement cache. When size is greater than zero, "
+			+ "SQL executed with parameters (the 'With Parameters' keywords), 'Read Single Value From Table' "
+			+ "and the queries of the row assertions are prepared and kept in a least recently used cache of "
+			+ "the given size, separately for each connection. Repeated execution of the same SQL then reuses "
+			+ "the statement and the execution plan of the database. Other SQL, e.g. of 'Execute SQL' and SQL "
+			+ "files, is not prepared, so ? in it is never taken as a placeholder. Cached statements of a "
+			+ "connection are closed when the connection is closed. Zero (the default) disables the cache "
+			+ "and closes cached statements.\n\n"
+			+ "*NOTE*: Some databases invalidate prepared statements when the tables they refer to are "
+			+ "altered. Disable the cache around schema changes if that's an issue.\n\n" + "Example: \n"
+			+ "| Set Statement Cache Size | 50 |")
+	@ArgumentNames({ "Cache size per connection" })
+	public void setStatementCacheSize(String size) {
+		StatementCache.setMaxSize(Integer.valueOf(size));
+	}
+
+	@RobotKeyword("Returns statistics of the prepared statement cache as a dictionary: configured size, "
+			+ "amount of currently cached statements over all connections and cumulative counts of cache "
+			+ "hits, misses and evictions.\n\n" + "Example: \n"
+			+ "| ${stats}= | Get Statement Cache Statistics |\n" + "| Log | ${stats}[hits] |")
+	public Map<String, Object> getStatementCacheStatistics() {
+		return StatementCache.getStatistics();
+	}
+
+	@RobotKeyword("Enables caching the results of read queries executed with the connection of given alias. "
+			+ "Results of 'Execute SQL' and 'Read Single Value From Table' are then kept for the given time "
+			+ "to live (in seconds), and the same SQL executed again within that time returns the cached "
+			+ "result without going to the database. Only queries starting with SELECT, WITH or VALUES, "
+			+ "and not containing INSERT, UPDATE, DELETE, MERGE, INTO or NEXTVAL, are cached.\n\n"
+			+ "At most the given amount of results are cached, and when the maximum size in bytes is more "
+			+ "than zero, the estimated memory used by them is also limited. Least recently used results are "
+			+ "evicted first.\n\n"
+			+ "All cached results of the alias are dropped when anything else than a read query is executed "
+			+ "with the alias through the library: 'Execute SQL', 'Execute SQL With Parameters', 'Delete All "
+			+ "Rows From Table', SQL started with 'Start SQL Async' and the file keywords. Changes made outside "
+			+ "the library, e.g. by the application under test, are not noticed, so use the cache only for "
+			+ "data that doesn't change during the time to live.\n\n"
+			+ "Setting the cache again empties it, and time to live of zero disables it.\n\n" + "Example: \n"
+			+ "| Set Result Cache | 600 | 500 | 10000000 | default |")
+	@ArgumentNames({ "Time to live in seconds", "Maximum entries=100", "Maximum size in bytes=0",
+			"Database alias=default" })
+	public void setResultCache(String ttl, String maxEntries, String maxBytes, String alias) {
+		if (!isConnected(alias)) {
+			throw new IllegalStateException(String.format(
+					"No connection open with alias %s. Did you forget to run 'Connect To Database' before?", alias));
+		}
+		ResultCache.configure(alias, Integer.valueOf(ttl), Integer.valueOf(maxEntries), Long.valueOf(maxBytes));
+	}
+
+	@RobotKeyword("Returns statistics of the result cache of the given alias as a dictionary: configured "
+			+ "time to live, maximum entries and bytes, amount of currently cached results and their "
+			+ "estimated size in bytes, and cumulative counts of cache hits, misses, evictions and "
+			+ "invalidations.\n\n" + "Example: \n" + "| ${stats}= | Get Result Cache Statistics | default |\n"
+			+ "| Log | ${stats}[hits] |")
+	@ArgumentNames({ "Database alias=default" })
+	public Map<String, Object> getResultCacheStatistics(String alias) {
+		return ResultCache.getStatistics(alias);
+	}
+
+	@RobotKeyword("Returns usage statistics of the connection pool opened for the given alias as a dictionary. "
+			+ "Statistics contain the configured min and max sizes, the amount of open, idle and active "
+			+ "connections and amount of threads currently waiting for a connection, and cumulative counts of "
+			+ "borrows, created and evicted connections, borrows that had to wait and borrows that timed out.\n\n"
+			+ "Example: \n" + "| ${stats}= | Get Connection Pool Statistics | pooled |\n"
+			+ "| Should Be Equal As Integers | ${stats}[timeouts] | 0 |")
+	@ArgumentNames({ "Database alias=default" })
+	public Map<String, Object> getConnectionPoolStatistics(String alias) {
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (pool == null) {
+			throw new IllegalStateException(String.format("No connection pool open with alias %s.", alias));
+		}
+		return pool.getStatistics();
+	}
+
+	@RobotKeyword("Begins a transaction on the active connection that is kept open until 'Rollback Test "
+			+ "Transaction', so that the changes made by a test can be rolled back instead of deleting and "
+			+ "reinserting the test data. Rolling back is usually much faster than reseeding the data." + "\n\n"
+			+ "All keywords using the active alias join the transaction, including the file keywords, which "
+			+ "roll back only their own changes on failure instead of the whole transaction. If the alias is "
+			+ "pooled, one connection is kept for the transaction until it ends. SQL started with 'Start SQL "
+			+ "Async' uses a connection of its own, so it does not see the changes of the transaction, and "
+			+ "sections of 'Execute SQL From File In Parallel' are executed one after another instead." + "\n\n"
+			+ "*NOTE*: Statements that commit implicitly, like DDL in many databases, commit the transaction "
+			+ "too, and those changes can't be rolled back." + "\n\n" + "Example: \n"
+			+ "| Begin Test Transaction | \n" + "| Execute SQL | DELETE FROM MySampleTable | \n"
+			+ "| Rollback Test Transaction | ")
+	public void beginTestTransaction() throws SQLException {
+		String alias = getCurrentConnectionAlias();
+		if (DatabaseConnection.transactionMap.containsKey(alias)) {
+			throw new IllegalStateException(String.format("Test transaction is already open for alias %s", alias));
+		}
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		Connection connection = pool != null ? pool.borrow() : getConnection(alias);
+		try {
+			DatabaseConnection.transactionMap.put(alias, new TestTransaction(connection));
+		} catch (SQLException e) {
+			if (pool != null) {
+				pool.release(connection);
+			}
+			throw e;
+		}
+	}
+
+	@RobotKeyword("Sets a savepoint with the given name in the transaction begun with 'Begin Test "
+			+ "Transaction'. Setting a savepoint again with the same name moves it to the current state." + "\n\n"
+			+ "Example: \n" + "| Set Savepoint | fixtures_loaded |")
+	@ArgumentNames({ "Savepoint name" })
+	public void setSavepoint(String name) throws SQLException {
+		getTestTransaction(getCurrentConnectionAlias()).setSavepoint(name);
+	}
+
+	@RobotKeyword("Rolls back the changes made after the savepoint with the given name was set, but keeps "
+			+ "the transaction open. Savepoints set after the given one are released." + "\n\n" + "Example: \n"
+			+ "| Rollback To Savepoint | fixtures_loaded |")
+	@ArgumentNames({ "Savepoint name" })
+	public void rollbackToSavepoint(String name) throws SQLException {
+		String alias = getCurrentConnectionAlias();
+		try {
+			getTestTransaction(alias).rollbackToSavepoint(name);
+		} finally {
+			ResultCache.invalidate(alias);
+		}
+	}
+
+	@RobotKeyword("Rolls back the transaction begun with 'Begin Test Transaction', and returns the connection "
+			+ "to auto-commit mode (and to the pool, if the alias is pooled)." + "\n\n" + "Example: \n"
+			+ "| Rollback Test Transaction |")
+	public void rollbackTestTransaction() throws SQLException {
+		String alias = getCurrentConnectionAlias();
+		TestTransaction transaction = getTestTransaction(alias);
+		DatabaseConnection.transactionMap.remove(alias, transaction);
+		try {
+			transaction.rollback();
+		} finally {
+			ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+			if (pool != null) {
+				pool.release(transaction.getConnection());
+			}
+			ResultCache.invalidate(alias);
+		}
 	}
 
 	@RobotKeyword("Releases the existing connection to the database. In addition this"
@@ -60,31 +427,356 @@ public class DatabaseConnection {
 			+ "Example:\n" + "| Disconnect from Database | default |")
 	@ArgumentNames({ "Database alias=default" })
 	public void disconnectFromDatabase(String alias) throws SQLException {
-		Connection disconnectingConnection = getConnection(alias);
+		abandonTestTransaction(alias);
+		ConnectionPool pool = DatabaseConnection.poolMap.remove(alias);
+		if (pool != null) {
+			closePool(pool, alias);
+		} else {
+			ManagedConnection disconnectingConnection = getManagedConnection(alias);
 
-		System.out.println(String.format("SQL Warnings on this connection (%s): %s", alias,
-				disconnectingConnection.getWarnings()));
-		disconnectingConnection.close();
-		DatabaseConnection.connectionMap.remove(alias);
-		if (alias.equals(DatabaseConnection.currentConnectionAlias)) {
-			DatabaseConnection.currentConnectionAlias = "";
+			System.out.println(String.format("SQL Warnings on this connection (%s): %s", alias,
+					disconnectingConnection.current().getWarnings()));
+			disconnectingConnection.close();
+			DatabaseConnection.connectionMap.remove(alias, disconnectingConnection);
 		}
+		cancelKeepalive(alias);
+		DatabaseConnection.statementOptionsMap.remove(alias);
+		ResultCache.remove(alias);
+		DatabaseConnection.currentConnectionAlias.compareAndSet(alias, "");
+		if (alias.equals(DatabaseConnection.threadConnectionAlias.get())) {
+			DatabaseConnection.threadConnectionAlias.remove();
+		}
+	}
+
+	private OpenedConnection openConnection(String driverClassName, String connectString, String dbUser,
+			String dbPassword, String alias, String maxPoolSize, String minPoolSize, String validationQuery,
+			String idleTimeout, String maxLifetime, String driverJarPath) throws SQLException, InstantiationException,
+			IllegalAccessException, ClassNotFoundException, IOException {
+		ConnectionSettings settings = new ConnectionSettings(DriverRegistry.getDriver(driverClassName, driverJarPath),
+				connectString, dbUser, dbPassword);
+		int maxSize = StringUtils.isEmpty(maxPoolSize) ? 0 : Integer.valueOf(maxPoolSize);
+		if (maxSize > 0) {
+			int minSize = StringUtils.isEmpty(minPoolSize) ? 0 : Integer.valueOf(minPoolSize);
+			long idleTimeoutMillis = StringUtils.isEmpty(idleTimeout) ? 0 : Long.valueOf(idleTimeout) * 1000;
+			long maxLifetimeMillis = StringUtils.isEmpty(maxLifetime) ? 0 : Long.valueOf(maxLifetime) * 1000;
+			return new OpenedConnection(alias, null, new ConnectionPool(settings, minSize, maxSize, validationQuery,
+					idleTimeoutMillis, maxLifetimeMillis));
+		}
+		return new OpenedConnection(alias, new ManagedConnection(settings, settings.open()), null);
+	}
+
+	private void register(OpenedConnection opened) {
+		if (opened.pool != null) {
+			setPool(opened.pool, opened.alias);
+		} else {
+			setConnection(opened.connection, opened.alias);
+		}
+	}
+
+	private static List<?> toList(Object value) {
+		if (value instanceof Object[]) {
+			return Arrays.asList((Object[]) value);
+		}
+		if (value instanceof List) {
+			return (List<?>) value;
+		}
+		throw new IllegalArgumentException("Expected a list, got: " + value);
+	}
+
+	private static String[] toConnectionDefinition(Object definition) {
+		String[] values = CONNECTION_DEFINITION_DEFAULTS.clone();
+		if (definition instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) definition;
+			for (int i = 0; i < CONNECTION_DEFINITION_KEYS.length; i++) {
+				if (map.containsKey(CONNECTION_DEFINITION_KEYS[i])) {
+					Object value = map.get(CONNECTION_DEFINITION_KEYS[i]);
+					values[i] = value == null ? null : value.toString();
+				}
+			}
+		} else {
+			List<?> list = toList(definition);
+			if (list.size() > values.length) {
+				throw new IllegalArgumentException("Too many values in connection definition: " + list);
+			}
+			for (int i = 0; i < list.size(); i++) {
+				values[i] = list.get(i) == null ? null : list.get(i).toString();
+			}
+		}
+		for (int i = 0; i < 4; i++) {
+			if (values[i] == null) {
+				throw new IllegalArgumentException(String.format("Connection definition %s is missing %s",
+						definition, CONNECTION_DEFINITION_KEYS[i]));
+			}
+		}
+		return values;
 	}
 
-	private void setConnection(Connection connection, String alias) {
+	private void setConnection(ManagedConnection connection, String alias) {
+		abandonTestTransaction(alias);
+		cancelKeepalive(alias);
 		DatabaseConnection.connectionMap.put(alias, connection);
-		DatabaseConnection.currentConnectionAlias = alias;
+		closePool(DatabaseConnection.poolMap.remove(alias), alias);
+		activate(alias);
+	}
+
+	private void setPool(ConnectionPool pool, String alias) {
+		abandonTestTransaction(alias);
+		cancelKeepalive(alias);
+		closePool(DatabaseConnection.poolMap.put(alias, pool), alias);
+		DatabaseConnection.connectionMap.remove(alias);
+		activate(alias);
+	}
+
+	private void activate(String alias) {
+		if (DatabaseConnection.threadConnectionAlias.get() != null) {
+			DatabaseConnection.threadConnectionAlias.set(alias);
+		} else {
+			DatabaseConnection.currentConnectionAlias.set(alias);
+		}
+	}
+
+	private static void cancelKeepalive(String alias) {
+		ScheduledFuture<?> task = DatabaseConnection.keepaliveTasks.remove(alias);
+		if (task != null) {
+			task.cancel(false);
+		}
+	}
+
+	private void closePool(ConnectionPool pool, String alias) {
+		if (pool != null) {
+			borrowedConnections.get().remove(alias);
+			pool.close();
+		}
+	}
+
+	private static TestTransaction getTestTransaction(String alias) {
+		TestTransaction transaction = DatabaseConnection.transactionMap.get(alias);
+		if (transaction == null) {
+			throw new IllegalStateException(String.format(
+					"No test transaction open for alias %s. Did you forget to run 'Begin Test Transaction' before?",
+					alias));
+		}
+		return transaction;
+	}
+
+	/**
+	 * Rolls back the test transaction of the alias, if there is one, when the
+	 * alias is disconnected or replaced.
+	 */
+	private static void abandonTestTransaction(String alias) {
+		TestTransaction transaction = DatabaseConnection.transactionMap.remove(alias);
+		if (transaction == null) {
+			return;
+		}
+		try {
+			transaction.rollback();
+		} catch (SQLException e) {
+			System.out.println(String.format("Could not roll back test transaction of alias %s: %s", alias,
+					e.getMessage()));
+		}
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (pool != null) {
+			pool.release(transaction.getConnection());
+		}
+	}
+
+	static boolean isInTestTransaction(String alias) {
+		return DatabaseConnection.transactionMap.containsKey(alias);
+	}
+
+	private static boolean isConnected(String alias) {
+		return DatabaseConnection.connectionMap.containsKey(alias) || DatabaseConnection.poolMap.containsKey(alias);
 	}
 
 	public static Connection getConnection() {
-		return getConnection(currentConnectionAlias);
+		return getConnection(getCurrentConnectionAlias());
+	}
+
+	/**
+	 * Returns the alias active for the calling thread: thread scoped alias if
+	 * one has been activated, otherwise the globally active alias.
+	 */
+	public static String getCurrentConnectionAlias() {
+		String alias = DatabaseConnection.threadConnectionAlias.get();
+		return alias != null ? alias : DatabaseConnection.currentConnectionAlias.get();
 	}
 
+	/**
+	 * Returns the connection of given alias. If alias has a connection pool,
+	 * connection is borrowed from the pool and kept by the calling thread
+	 * until {@link #releaseBorrowedConnections()} is called. Inside a test
+	 * transaction the connection of the transaction is returned.
+	 */
 	public static Connection getConnection(String alias) {
-		if (!DatabaseConnection.connectionMap.containsKey(alias)) {
+		TestTransaction transaction = DatabaseConnection.transactionMap.get(alias);
+		if (transaction != null) {
+			return transaction.getConnection();
+		}
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (pool != null) {
+			Map<String, Connection> borrowed = borrowedConnections.get();
+			Connection connection = borrowed.get(alias);
+			if (connection == null) {
+				try {
+					connection = pool.borrow();
+				} catch (SQLException e) {
+					throw new IllegalStateException(String.format(
+							"Could not get connection from pool with alias %s: %s", alias, e.getMessage()), e);
+				}
+				borrowed.put(alias, connection);
+			}
+			return connection;
+		}
+		ManagedConnection managed = getManagedConnection(alias);
+		Map<String, ManagedConnection> checkedOut = checkedOutConnections.get();
+		try {
+			if (checkedOut.get(alias) == managed) {
+				return managed.getCheckedOut();
+			}
+			Connection connection = managed.checkOut();
+			ManagedConnection replaced = checkedOut.put(alias, managed);
+			if (replaced != null) {
+				replaced.release();
+			}
+			return connection;
+		} catch (SQLException e) {
+			throw new IllegalStateException(
+					String.format("Could not reopen connection with alias %s: %s", alias, e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * Returns the statement options set for the active alias.
+	 */
+	static StatementOptions getStatementOptions() {
+		return getStatementOptions(getCurrentConnectionAlias());
+	}
+
+	static StatementOptions getStatementOptions(String alias) {
+		StatementOptions options = DatabaseConnection.statementOptionsMap.get(alias);
+		return options != null ? options : StatementOptions.DEFAULT;
+	}
+
+	/**
+	 * Returns a connection of given alias that stays with the caller over
+	 * several keywords, e.g. for an open cursor. If alias has a connection
+	 * pool, connection is borrowed for the caller only and must be given back
+	 * with {@link #returnConnection(String, Connection)}. Inside a test
+	 * transaction the connection of the transaction is returned.
+	 */
+	static Connection borrowConnection(String alias) throws SQLException {
+		TestTransaction transaction = DatabaseConnection.transactionMap.get(alias);
+		if (transaction != null) {
+			return transaction.getConnection();
+		}
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (pool != null) {
+			return pool.borrow();
+		}
+		return getManagedConnection(alias).checkOut();
+	}
+
+	/**
+	 * Returns a connection of given alias that is not shared with anyone else:
+	 * a connection borrowed from the pool if the alias has one, otherwise a
+	 * new connection opened with the settings of the alias. Must be given back
+	 * with {@link #returnConnection(String, Connection)}.
+	 */
+	static Connection borrowSeparateConnection(String alias) throws SQLException {
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (pool != null) {
+			return pool.borrow();
+		}
+		return getManagedConnection(alias).openSeparate();
+	}
+
+	static boolean isPooled(String alias) {
+		return DatabaseConnection.poolMap.containsKey(alias);
+	}
+
+	/**
+	 * Gives back a connection got with {@link #borrowConnection(String)} or
+	 * {@link #borrowSeparateConnection(String)}. Separately opened connections
+	 * are closed.
+	 */
+	static void returnConnection(String alias, Connection connection) {
+		TestTransaction transaction = DatabaseConnection.transactionMap.get(alias);
+		if (transaction != null && transaction.getConnection() == connection) {
+			// Kept until the transaction ends
+			return;
+		}
+		ConnectionPool pool = DatabaseConnection.poolMap.get(alias);
+		if (pool != null) {
+			pool.release(connection);
+			return;
+		}
+		ManagedConnection managed = DatabaseConnection.connectionMap.get(alias);
+		if (managed != null && !managed.removeSeparate(connection)) {
+			// Kept open, no longer in use by the caller
+			managed.release();
+			return;
+		}
+		if (managed == null || managed.current() != connection) {
+			StatementCache.remove(connection);
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				// Connection is not used anymore
+			}
+		}
+	}
+
+	private static ManagedConnection getManagedConnection(String alias) {
+		ManagedConnection connection = DatabaseConnection.connectionMap.get(alias);
+		if (connection == null) {
 			throw new IllegalStateException(String.format(
 					"No connection open with alias %s. Did you forget to run 'Connect To Database' before?", alias));
 		}
-		return DatabaseConnection.connectionMap.get(alias);
+		return connection;
+	}
+
+	/**
+	 * Clears the thread scoped alias of the calling thread, so that it doesn't
+	 * leak to the next keyword executed by the same thread. Called after each
+	 * keyword execution.
+	 */
+	public static void clearThreadConnectionAlias() {
+		DatabaseConnection.threadConnectionAlias.remove();
+	}
+
+	/**
+	 * Returns pooled connections borrowed by the calling thread back to their
+	 * pools, and ends the use of single connections checked out by it. Called
+	 * after each keyword execution.
+	 */
+	public static void releaseBorrowedConnections() {
+		Map<String, ManagedConnection> checkedOut = checkedOutConnections.get();
+		for (ManagedConnection managed : checkedOut.values()) {
+			managed.release();
+		}
+		checkedOut.clear();
+		Map<String, Connection> borrowed = borrowedConnections.get();
+		if (borrowed.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<String, Connection> entry : borrowed.entrySet()) {
+			ConnectionPool pool = DatabaseConnection.poolMap.get(entry.getKey());
+			if (pool != null) {
+				pool.release(entry.getValue());
+			}
+		}
+		borrowed.clear();
+	}
+
+	private static class OpenedConnection {
+		final String alias;
+		final ManagedConnection connection;
+		final ConnectionPool pool;
+
+		OpenedConnection(String alias, ManagedConnection connection, ConnectionPool pool) {
+			this.alias = alias;
+			this.connection = connection;
+			this.pool = pool;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Driver;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Loads and instantiates JDBC drivers only once per driver class (and driver
+ * jar). Drivers given with a jar path are loaded with their own class loader,
+ * which is cached per jar, so that different versions of the same driver can
+ * be used at the same time without having them in the classpath.
+ */
+class DriverRegistry {
+
+	private static final ConcurrentMap<String, Driver> drivers = new ConcurrentHashMap<String, Driver>();
+
+	private static final ConcurrentMap<String, ClassLoader> classLoaders = new ConcurrentHashMap<String, ClassLoader>();
+
+	private DriverRegistry() {
+	}
+
+	static Driver getDriver(String driverClassName, String driverJarPath)
+			throws ClassNotFoundException, InstantiationException, IllegalAccessException, IOException {
+		String jarPath = StringUtils.isEmpty(driverJarPath) ? null : new File(driverJarPath).getCanonicalPath();
+		String key = jarPath == null ? driverClassName : jarPath + "!" + driverClassName;
+		Driver driver = drivers.get(key);
+		if (driver == null) {
+			ClassLoader classLoader = jarPath == null ? DriverRegistry.class.getClassLoader() : getClassLoader(jarPath);
+			driver = (Driver) Class.forName(driverClassName, true, classLoader).newInstance();
+			Driver existing = drivers.putIfAbsent(key, driver);
+			if (existing != null) {
+				driver = existing;
+			}
+		}
+		return driver;
+	}
+
+	private static ClassLoader getClassLoader(String jarPath) throws IOException {
+		ClassLoader classLoader = classLoaders.get(jarPath);
+		if (classLoader == null) {
+			File jarFile = new File(jarPath);
+			if (!jarFile.isFile()) {
+				throw new FileNotFoundException("Driver jar not found: " + jarPath);
+			}
+			// Parent is the platform class loader so that the driver itself is
+			// never picked from the application classpath
+			classLoader = new URLClassLoader(new URL[] { jarFile.toURI().toURL() },
+					ClassLoader.getSystemClassLoader().getParent());
+			ClassLoader existing = classLoaders.putIfAbsent(jarPath, classLoader);
+			if (existing != null) {
+				classLoader = existing;
+			}
+		}
+		return classLoader;
+	}
+}
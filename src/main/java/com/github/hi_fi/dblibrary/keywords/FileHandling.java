@@ -63,12 +63,11 @@ public class FileHandling {
 	public void compareQueryResultToFile(String sqlString, String fileName)
 			throws SQLException, DatabaseLibraryException, FileNotFoundException {
 
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
+		Statement stmt = Statements.execute(DatabaseConnection.getConnection(), sqlString);
 		int numDiffs = 0;
 		int maxDiffs = 10;
 		String diffs = "";
 		try {
-			stmt.execute(sqlString);
 			ResultSet rs = (ResultSet) stmt.getResultSet();
 			ResultSetMetaData rsmd = rs.getMetaData();
 			int numberOfColumns = rsmd.getColumnCount();
@@ -101,9 +100,7 @@ public class FileHandling {
 			numDiffs++;
 			diffs += "Fewer rows in expected file than in query result\n";
 		} finally {
-			// stmt.close() automatically takes care of its ResultSet, so no
-			// rs.close()
-			stmt.close();
+			Statements.release(stmt);
 			if (numDiffs > 0)
 				throw new DatabaseLibraryException(diffs);
 		}
@@ -145,12 +142,12 @@ public class FileHandling {
 			+ "The keyword returns the amount of rows that have been successfully stored " + "to the database table. "
 			+ " " + "Example: | ${ROWSIMPORTED}= | /tmp/mysampletable.xml | ")
 	@ArgumentNames({ "File containing XML data to be imported" })
-	public int importDataFromFile(String filePath) throws ParserConfigurationException, SAXException, IOException, SQLException {
+	public int importDataFromFile(String filePath)
+			throws ParserConfigurationException, SAXException, IOException, SQLException, DatabaseLibraryException {
 		Document doc = this.parseXMLDocumentFromFile(filePath);
 		String table = ((Element) doc.getElementsByTagName("Export").item(0)).getAttribute("table");
 		NodeList rows = doc.getElementsByTagName("Row");
-		String query = "INSERT INTO "+table+" VALUES ";
-		List<String> insertList = new ArrayList<String>();
+		List<Object> insertList = new ArrayList<Object>();
 		for (int rowIndex = 0; rowIndex < rows.getLength(); rowIndex++) {
 			List<String> dataList = new ArrayList<String>();
 			NodeList rowData = rows.item(rowIndex).getChildNodes();
@@ -159,11 +156,63 @@ public class FileHandling {
 					dataList.add(rowData.item(dataIndex).getTextContent());
 				}
 			}
-			insertList.add("('"+StringUtils.join(dataList, "', '")+"')");
+			insertList.add(dataList);
 		}
-		query += StringUtils.join(insertList, ", ");
-		queryRunner.executeSql(query);
-		return insertList.size();
+		return queryRunner.insertRowsIntoTable(table, insertList);
+	}
+
+	@RobotKeyword("Loads the rows of the given CSV file into the given table, and returns the amount of "
+			+ "loaded rows. First row of the file must be a header with the column name of each field. "
+			+ "Fields can be mapped to other columns with \"Header=Column\" pairs separated with commas, "
+			+ "and fields mapped to nothing (\"Header=\") are not loaded. " + "\n\n"
+			+ "File is read in UTF-8 as RFC 4180 CSV: fields containing the delimiter, quotes or line breaks "
+			+ "are quoted with double quotes. Empty field is loaded as NULL, and empty quoted field (\"\") "
+			+ "as an empty string. Values are converted to the column types by the driver. " + "\n\n"
+			+ "File is read while the rows are inserted, so also files of millions of rows can be loaded. "
+			+ "Rows are inserted like with 'Insert Rows Into Table', in batches of the given size and with "
+			+ "optional commit interval. With PostgreSQL, the file is loaded with COPY instead, unless some "
+			+ "fields are not loaded or commit interval is given." + "\n\n"
+			+ "*NOTE*: If using keyword remotely, file need to be trasfered to server some "
+			+ "other way; this library is not doing the transfer." + "\n\n" + "Example: \n"
+			+ "| ${rows}= | Load CSV Into Table | customers.csv | Customers | \n"
+			+ "| Load CSV Into Table | orders.csv | Orders | Order id=Id,Comment= | Delimiter=; | Batch size=5000 |")
+	@ArgumentNames({ "CSV file to load", "Table name", "Column mapping=", "Delimiter=,", "Batch size=1000",
+			"Commit interval=0" })
+	public int loadCsvIntoTable(String fileName, String tableName, String columnMapping, String delimiter,
+			String batchSize, String commitInterval) throws IOException, SQLException, DatabaseLibraryException {
+		try {
+			return new CsvTransfer(DatabaseConnection.getConnection(), delimiter).load(fileName, tableName,
+					CsvTransfer.parseColumnMapping(columnMapping), Integer.valueOf(batchSize),
+					Integer.valueOf(commitInterval));
+		} finally {
+			ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
+		}
+	}
+
+	public int loadCsvIntoTable(String fileName, String tableName)
+			throws IOException, SQLException, DatabaseLibraryException {
+		return loadCsvIntoTable(fileName, tableName, null, ",", "1000", "0");
+	}
+
+	@RobotKeyword("Writes the rows of the given table into the given CSV file, and returns the amount of "
+			+ "written rows. The where-clause can be used to limit the rows. First row of the file is a "
+			+ "header with the column names. " + "\n\n"
+			+ "File is written in UTF-8 in the format read by 'Load CSV Into Table': NULL is written as an "
+			+ "empty field and an empty string as \"\". Rows are written while they are read from the "
+			+ "database, so also tables of millions of rows can be unloaded. With PostgreSQL, the rows are "
+			+ "unloaded with COPY." + "\n\n"
+			+ "*NOTE*: If using keyword remotely, file need to be trasfered from server some "
+			+ "other way; this library is not doing the transfer." + "\n\n" + "Example: \n"
+			+ "| ${rows}= | Unload Table To CSV | Customers | customers.csv | \n"
+			+ "| Unload Table To CSV | Orders | orders.csv | Created > CURRENT_DATE - 7 | ; |")
+	@ArgumentNames({ "Table name", "CSV file to write", "Where clause=", "Delimiter=," })
+	public int unloadTableToCsv(String tableName, String fileName, String where, String delimiter)
+			throws IOException, SQLException {
+		return new CsvTransfer(DatabaseConnection.getConnection(), delimiter).unload(tableName, where, fileName);
+	}
+
+	public int unloadTableToCsv(String tableName, String fileName) throws IOException, SQLException {
+		return unloadTableToCsv(tableName, fileName, null, ",");
 	}
 
 	@RobotKeyword("Executes the given SQL without any further modifications and stores the "
@@ -176,9 +225,8 @@ public class FileHandling {
 	@ArgumentNames({ "Query to execute", "File to save results" })
 	public void storeQueryResultToFile(String sqlString, String fileName) throws SQLException, IOException {
 
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
+		Statement stmt = Statements.execute(DatabaseConnection.getConnection(), sqlString);
 		try {
-			stmt.execute(sqlString);
 			ResultSet rs = (ResultSet) stmt.getResultSet();
 			ResultSetMetaData rsmd = rs.getMetaData();
 			int numberOfColumns = rsmd.getColumnCount();
@@ -193,9 +241,7 @@ public class FileHandling {
 			}
 			out.close();
 		} finally {
-			// stmt.close() automatically takes care of its ResultSet, so no
-			// rs.close()
-			stmt.close();
+			Statements.release(stmt);
 		}
 	}
 
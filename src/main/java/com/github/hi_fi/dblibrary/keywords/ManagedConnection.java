@@ -0,0 +1,216 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Single (not pooled) connection of an alias. Keeps the settings connection
+ * was opened with, so that when keepalive is enabled a connection dropped by
+ * database or network can be reopened before it's used again.
+ * <p>
+ * Connection is in use from {@link #checkOut()} until {@link #release()}: for
+ * the rest of the keyword, or while an open cursor holds it. JDBC connections
+ * must not be used by two threads at the same time, so a connection in use is
+ * not pinged nor reopened in the background.
+ */
+class ManagedConnection {
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private final ConnectionSettings settings;
+	private volatile Connection connection;
+	private volatile long lastUsed;
+	private volatile boolean dead = false;
+	private volatile boolean inTransaction = false;
+	private volatile long keepaliveIntervalMillis = 0;
+	private volatile String pingQuery;
+	private final AtomicInteger users = new AtomicInteger();
+	private final Set<Connection> separateConnections = Collections
+			.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>()));
+
+	ManagedConnection(ConnectionSettings settings, Connection connection) {
+		this.settings = settings;
+		this.connection = connection;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the connection without any checks.
+	 */
+	Connection current() {
+		return connection;
+	}
+
+	/**
+	 * Returns the connection for use, and marks it in use until
+	 * {@link #release()}. If keepalive is enabled and connection is found
+	 * dead, it's reopened, unless a transaction is open in it. Idle
+	 * connection is pinged only if no one else is using it.
+	 */
+	synchronized Connection checkOut() throws SQLException {
+		boolean idle = users.getAndIncrement() == 0;
+		try {
+			return getConnection(idle);
+		} catch (SQLException e) {
+			users.decrementAndGet();
+			throw e;
+		} catch (RuntimeException e) {
+			users.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the connection already checked out by the caller, reopening it
+	 * only if it has been closed.
+	 */
+	Connection getCheckedOut() throws SQLException {
+		return getConnection(false);
+	}
+
+	/**
+	 * Ends one use started with {@link #checkOut()}. Idle time for the
+	 * keepalive starts from the last release.
+	 */
+	void release() {
+		lastUsed = System.currentTimeMillis();
+		int count;
+		do {
+			count = users.get();
+			if (count == 0) {
+				// Checked out from the instance this one replaced
+				return;
+			}
+		} while (!users.compareAndSet(count, count - 1));
+	}
+
+	private Connection getConnection(boolean idle) throws SQLException {
+		Connection current = connection;
+		if (keepaliveIntervalMillis > 0) {
+			long idleMillis = System.currentTimeMillis() - lastUsed;
+			if ((dead || current.isClosed() || (idle && idleMillis >= keepaliveIntervalMillis && !isAlive(current)))
+					&& !isInTransaction(current)) {
+				current = reconnect(current);
+			}
+			// Known state of the live connection tells later, when it may be
+			// dead, if it can be reopened
+			refreshTransactionState(current);
+		}
+		lastUsed = System.currentTimeMillis();
+		return current;
+	}
+
+	/**
+	 * Opens a new connection with the same settings. The new connection is
+	 * not managed by this instance.
+	 */
+	Connection openSeparate() throws SQLException {
+		Connection separate = settings.open();
+		separateConnections.add(separate);
+		return separate;
+	}
+
+	/**
+	 * Tells if the connection was opened with {@link #openSeparate()}, and
+	 * forgets it.
+	 */
+	boolean removeSeparate(Connection connection) {
+		return separateConnections.remove(connection);
+	}
+
+	void setKeepalive(long intervalMillis, String pingQuery) {
+		this.keepaliveIntervalMillis = intervalMillis;
+		this.pingQuery = pingQuery;
+	}
+
+	/**
+	 * Pings the connection if it has been idle for the keepalive interval, and
+	 * reopens it if it doesn't respond. Called periodically from background.
+	 * Connection in use is left alone.
+	 */
+	synchronized void keepAlive() {
+		Connection current = connection;
+		if (keepaliveIntervalMillis <= 0 || users.get() > 0
+				|| System.currentTimeMillis() - lastUsed < keepaliveIntervalMillis || isInTransaction(current)) {
+			return;
+		}
+		if (!isAlive(current)) {
+			dead = true;
+			try {
+				reconnect(current);
+			} catch (SQLException e) {
+				System.out.println("Could not reopen connection to " + settings.getConnectString() + ": "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	void close() throws SQLException {
+		StatementCache.remove(connection);
+		connection.close();
+	}
+
+	private synchronized Connection reconnect(Connection stale) throws SQLException {
+		if (connection != stale) {
+			// Already reopened by another thread
+			return connection;
+		}
+		StatementCache.remove(stale);
+		try {
+			stale.close();
+		} catch (SQLException e) {
+			// Connection is dead anyway
+		}
+		connection = settings.open();
+		dead = false;
+		inTransaction = false;
+		lastUsed = System.currentTimeMillis();
+		System.out.println("Reopened connection to " + settings.getConnectString());
+		return connection;
+	}
+
+	private boolean isAlive(Connection current) {
+		try {
+			if (StringUtils.isEmpty(pingQuery)) {
+				return current.isValid(VALIDATION_TIMEOUT_SECONDS);
+			}
+			Statement stmt = current.createStatement();
+			try {
+				stmt.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+				stmt.execute(pingQuery);
+			} finally {
+				stmt.close();
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean isInTransaction(Connection current) {
+		refreshTransactionState(current);
+		return inTransaction;
+	}
+
+	/**
+	 * Records if a transaction is open in the connection, if it can still
+	 * tell that.
+	 */
+	private void refreshTransactionState(Connection current) {
+		try {
+			if (!current.isClosed()) {
+				inTransaction = !current.getAutoCommit();
+			}
+		} catch (SQLException e) {
+			// Connection can't tell its state anymore, so the last known state
+			// is used
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes a SQL script with sections marked with "-- @section name" lines.
+ * Consecutive sections are independent of each other, and are executed at the
+ * same time, each on its own connection and in its own transaction.
+ * Statements outside sections are executed in order on the connection of the
+ * keyword, and committed before the sections following them are started.
+ * Inside a test transaction everything is executed one after another on the
+ * connection of the transaction.
+ */
+class ParallelScriptExecutor {
+
+	enum FailurePolicy {
+		/**
+		 * Failure of a section cancels the other sections and the rest of the
+		 * script.
+		 */
+		STOP,
+		/**
+		 * All sections and the rest of the script are executed regardless of
+		 * failures, which are reported at the end.
+		 */
+		CONTINUE
+	}
+
+	private final String alias;
+	private final int maxParallelSections;
+	private final FailurePolicy failurePolicy;
+	private final int batchSize;
+	private final String delimiter;
+	private final StatementOptions options;
+
+	ParallelScriptExecutor(String alias, int maxParallelSections, FailurePolicy failurePolicy, int batchSize,
+			String delimiter) {
+		if (maxParallelSections < 1) {
+			throw new IllegalArgumentException("Maximum amount of parallel sections must be at least 1");
+		}
+		this.alias = alias;
+		this.maxParallelSections = maxParallelSections;
+		this.failurePolicy = failurePolicy;
+		this.batchSize = batchSize;
+		this.delimiter = delimiter;
+		// Sections are executed in other threads, which don't know the alias
+		this.options = DatabaseConnection.getStatementOptions(alias);
+	}
+
+	/**
+	 * Executes the file and returns the execution time of each section in
+	 * milliseconds.
+	 */
+	Map<String, Long> executeFile(String fileName) throws SQLException, IOException, DatabaseLibraryException {
+		Map<String, Long> timings = new LinkedHashMap<String, Long>();
+		List<String> failures = new ArrayList<String>();
+		int sectionCount = 0;
+		for (Phase phase : readPhases(fileName)) {
+			if (!failures.isEmpty() && failurePolicy == FailurePolicy.STOP) {
+				break;
+			}
+			if (phase.sections.isEmpty()) {
+				new SqlScriptExecutor(DatabaseConnection.getConnection(alias), batchSize, false, delimiter, options)
+						.executeStatements(phase.statements);
+			} else if (DatabaseConnection.isInTestTransaction(alias)) {
+				// Separate connections would not see the changes of the
+				// transaction
+				sectionCount += phase.sections.size();
+				executeSectionsInTransaction(phase.sections, timings);
+			} else {
+				sectionCount += phase.sections.size();
+				executeSections(phase.sections, timings, failures);
+			}
+		}
+		if (!failures.isEmpty()) {
+			StringBuilder message = new StringBuilder(
+					String.format("%d of %d sections failed:", failures.size(), sectionCount));
+			for (String failure : failures) {
+				message.append("\n").append(failure);
+			}
+			throw new DatabaseLibraryException(message.toString());
+		}
+		return timings;
+	}
+
+	private void executeSections(Map<String, List<String>> sections, Map<String, Long> timings,
+			List<String> failures) {
+		final List<SqlScriptExecutor> running = Collections.synchronizedList(new ArrayList<SqlScriptExecutor>());
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Map<String, Future<Long>> results = new LinkedHashMap<String, Future<Long>>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxParallelSections, sections.size()),
+				new DaemonThreadFactory("dblibrary-script-section"));
+		try {
+			for (final Map.Entry<String, List<String>> section : sections.entrySet()) {
+				results.put(section.getKey(), executor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						if (failed.get() && failurePolicy == FailurePolicy.STOP) {
+							return null;
+						}
+						return executeSection(section.getValue(), running, failed);
+					}
+				}));
+			}
+			for (Map.Entry<String, Future<Long>> result : results.entrySet()) {
+				String section = result.getKey();
+				try {
+					Long millis = result.getValue().get();
+					if (millis == null) {
+						System.out.println(String.format("Section %s: skipped", section));
+					} else {
+						System.out.println(String.format("Section %s: %d statements in %d ms", section,
+								sections.get(section).size(), millis));
+						timings.put(section, millis);
+					}
+				} catch (ExecutionException e) {
+					System.out.println(String.format("Section %s: failed", section));
+					failures.add(String.format("%s: %s", section, e.getCause().getMessage()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failures.add(String.format("%s: interrupted", section));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void executeSectionsInTransaction(Map<String, List<String>> sections, Map<String, Long> timings)
+			throws SQLException, DatabaseLibraryException {
+		for (Map.Entry<String, List<String>> section : sections.entrySet()) {
+			long start = System.currentTimeMillis();
+			new SqlScriptExecutor(DatabaseConnection.getConnection(alias), batchSize, false, delimiter, options)
+					.executeStatements(section.getValue());
+			long millis = System.currentTimeMillis() - start;
+			System.out.println(String.format("Section %s: %d statements in %d ms (in test transaction)",
+					section.getKey(), section.getValue().size(), millis));
+			timings.put(section.getKey(), millis);
+		}
+	}
+
+	private Long executeSection(List<String> statements, List<SqlScriptExecutor> running, AtomicBoolean failed)
+			throws SQLException, DatabaseLibraryException {
+		Connection connection = null;
+		SqlScriptExecutor sectionExecutor = null;
+		try {
+			connection = DatabaseConnection.borrowSeparateConnection(alias);
+			sectionExecutor = new SqlScriptExecutor(connection, batchSize, false, delimiter, options);
+			running.add(sectionExecutor);
+			long start = System.currentTimeMillis();
+			sectionExecutor.executeStatements(statements);
+			return System.currentTimeMillis() - start;
+		} catch (SQLException e) {
+			cancelOthers(running, failed);
+			throw e;
+		} catch (DatabaseLibraryException e) {
+			cancelOthers(running, failed);
+			throw e;
+		} finally {
+			if (sectionExecutor != null) {
+				running.remove(sectionExecutor);
+			}
+			if (connection != null) {
+				DatabaseConnection.returnConnection(alias, connection);
+			}
+		}
+	}
+
+	private void cancelOthers(List<SqlScriptExecutor> running, AtomicBoolean failed) {
+		if (failed.compareAndSet(false, true) && failurePolicy == FailurePolicy.STOP) {
+			synchronized (running) {
+				for (SqlScriptExecutor other : running) {
+					other.cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the statements of the file grouped into phases executed one after
+	 * another: either statements outside sections, or consecutive sections.
+	 */
+	private List<Phase> readPhases(String fileName) throws IOException {
+		List<Phase> phases = new ArrayList<Phase>();
+		Phase phase = null;
+		Reader reader = new FileReader(new File(fileName));
+		try {
+			SqlTokenizer tokenizer = new SqlTokenizer(reader, delimiter);
+			String sql;
+			while ((sql = tokenizer.next()) != null) {
+				String section = tokenizer.getSection();
+				if (phase == null || (section == null) != phase.sections.isEmpty()) {
+					phase = new Phase();
+					phases.add(phase);
+				}
+				if (section == null) {
+					phase.statements.add(sql);
+				} else {
+					List<String> statements = phase.sections.get(section);
+					if (statements == null) {
+						statements = new ArrayList<String>();
+						phase.sections.put(section, statements);
+					}
+					statements.add(sql);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return phases;
+	}
+
+	private static class Phase {
+		final List<String> statements = new ArrayList<String>();
+		final Map<String, List<String>> sections = new LinkedHashMap<String, List<String>>();
+	}
+}
@@ -1,16 +1,20 @@
 package com.github.hi_fi.dblibrary.keywords;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.robotframework.javalib.annotation.ArgumentNames;
 import org.robotframework.javalib.annotation.RobotKeyword;
@@ -19,178 +23,541 @@ import org.robotframework.javalib.annotation.RobotKeywords;
 @RobotKeywords
 public class Query {
 
+	private static final ConcurrentMap<String, QueryCursor> cursors = new ConcurrentHashMap<String, QueryCursor>();
+
+	private static final AtomicLong cursorCounter = new AtomicLong();
+
+	private static final ConcurrentMap<String, AsyncQuery> asyncQueries = new ConcurrentHashMap<String, AsyncQuery>();
+
+	private static final AtomicLong asyncQueryCounter = new AtomicLong();
+
+	private static final int DEFAULT_CURSOR_FETCH_SIZE = 1000;
+
+	private static final int MAX_KEYS_PER_QUERY = 1000;
+
+	private static final List<String> RESULT_FORMATS = Arrays.asList("dictionaries", "rows", "columns");
+
 	@RobotKeyword("Deletes the entire content of the given database table. This keyword is"
 			+ "useful to start tests in a clean state. Use this keyword with care as"
 			+ "accidently execution of this keyword in a productive system will cause"
-			+ "heavy loss of data. There will be no rollback possible.\n\n" + "Example: \n"
-			+ "| Delete All Rows From Table | MySampleTable |")
-	@ArgumentNames({ "Table name" })
+			+ "heavy loss of data. There will be no rollback possible.\n\n"
+			+ "By default rows are deleted with DELETE. With mode _truncate_ the table is emptied with "
+			+ "TRUNCATE in the syntax of the database, which doesn't log each row or fire delete triggers, "
+			+ "and is much faster for large tables. Where TRUNCATE is not allowed, e.g. because other "
+			+ "tables reference the table with foreign keys, or there is no TRUNCATE (SQLite), rows are "
+			+ "deleted instead. TRUNCATE commits implicitly in most databases, so inside 'Begin Test "
+			+ "Transaction' rows are deleted, except with PostgreSQL and SQL Server." + "\n\n"
+			+ "Foreign key handling for _truncate_ is one of:\n\n"
+			+ "| keep | Foreign keys are kept, and referenced tables are emptied with DELETE. This is the default. |\n"
+			+ "| cascade | Tables referencing the table are truncated too (PostgreSQL, Oracle). |\n"
+			+ "| disable | Foreign key checks are disabled for the truncate (MySQL, MariaDB, H2, HSQLDB). |\n\n"
+			+ "With _Reset identity_ identity columns restart from their start value (PostgreSQL, H2, "
+			+ "HSQLDB). MySQL, MariaDB, SQL Server and Derby always reset them on truncate." + "\n\n"
+			+ "Example: \n" + "| Delete All Rows From Table | MySampleTable |\n"
+			+ "| Delete All Rows From Table | BigTable | truncate | Reset identity=True |")
+	@ArgumentNames({ "Table name", "Mode=delete", "Foreign keys=keep", "Reset identity=False" })
+	public void deleteAllRowsFromTable(String tableName, String mode, String foreignKeys, String resetIdentity)
+			throws SQLException {
+		deleteAllRowsFromTables(Arrays.asList(tableName), mode, foreignKeys, resetIdentity);
+	}
+
 	public void deleteAllRowsFromTable(String tableName) throws SQLException {
-		String sql = "delete from " + tableName;
+		deleteAllRowsFromTable(tableName, "delete", "keep", "False");
+	}
 
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
+	@RobotKeyword("Deletes the entire content of the given database tables, like 'Delete All Rows From "
+			+ "Table'. Tables are emptied in dependency order: tables referencing other given tables with "
+			+ "foreign keys are emptied before the tables they reference. With PostgreSQL all the tables "
+			+ "are truncated with one statement." + "\n\n" + "Example: \n"
+			+ "| @{tables}= | Create List | OrderLines | Orders | Customers |\n"
+			+ "| Delete All Rows From Tables | ${tables} | truncate |")
+	@ArgumentNames({ "Table names", "Mode=delete", "Foreign keys=keep", "Reset identity=False" })
+	public void deleteAllRowsFromTables(List<String> tableNames, String mode, String foreignKeys,
+			String resetIdentity) throws SQLException {
 		try {
-			stmt.execute(sql);
+			new TableTruncator(DatabaseConnection.getConnection(), mode, foreignKeys,
+					Boolean.parseBoolean(resetIdentity)).empty(tableNames);
 		} finally {
-			stmt.close();
+			ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
 		}
 	}
 
+	public void deleteAllRowsFromTables(List<String> tableNames) throws SQLException {
+		deleteAllRowsFromTables(tableNames, "delete", "keep", "False");
+	}
+
 	@RobotKeyword("Executes the given SQL without any further modifications. The given SQL "
-			+ "must be valid for the database that is used. Results are returned as a list of dictionaries" + "\n\n"
+			+ "must be valid for the database that is used. Results are returned as a list of dictionaries, "
+			+ "unless another result format is given:" + "\n\n"
+			+ "| dictionaries | List of dictionaries, one per row. This is the default. |\n"
+			+ "| rows | Dictionary with the column names as a list in key _columns_, and a list of values "
+			+ "per row, in the same order, in key _rows_. |\n"
+			+ "| columns | Dictionary with a list of values per column name. |\n\n"
+			+ "_rows_ and _columns_ are considerably lighter than dictionaries for wide or large results, as "
+			+ "column names are not repeated on each row." + "\n\n"
+			+ "Fetch size, maximum number of rows and query timeout (in seconds) override the ones set with "
+			+ "'Set Statement Options' for this statement only." + "\n\n"
 			+ "*NOTE*: Use this method with care as you might cause damage to your "
 			+ "database, especially when using this in a productive environment. " + "\n\n" + "Example: \n"
-			+ "| Execute SQL | CREATE TABLE MyTable (Num INTEGER) | ")
-	@ArgumentNames({ "SQL String to execute" })
+			+ "| Execute SQL | CREATE TABLE MyTable (Num INTEGER) | \n"
+			+ "| ${result}= | Execute SQL | SELECT Id, Name FROM MySampleTable | rows |\n"
+			+ "| Log Many | @{result}[columns] | |\n"
+			+ "| Execute SQL | SELECT * FROM MyLargeTable | Fetch size=1000 | Query timeout=300 |")
+	@ArgumentNames({ "SQL String to execute", "Result format=dictionaries", "Fetch size=", "Maximum number of rows=",
+			"Query timeout=" })
+	public Object executeSql(String sqlString, String resultFormat, String fetchSize, String maxRows,
+			String queryTimeout) throws SQLException {
+		checkResultFormat(resultFormat);
+		StatementOptions options = DatabaseConnection.getStatementOptions().override(fetchSize, maxRows,
+				queryTimeout);
+		String alias = DatabaseConnection.getCurrentConnectionAlias();
+		String cacheKey = resultFormat.toLowerCase() + ":" + options.getMaxRows() + ":" + sqlString;
+		boolean readQuery = ResultCache.isReadQuery(sqlString);
+		if (readQuery) {
+			Object cached = ResultCache.get(alias, cacheKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		long generation = ResultCache.getGeneration(alias);
+		Object result;
+		Statement stmt = null;
+		try {
+			stmt = Statements.execute(DatabaseConnection.getConnection(), sqlString, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY, options);
+			ResultSet rs = stmt.getResultSet();
+			result = rs == null ? readRows(stmt) : readResult(rs, resultFormat);
+		} finally {
+			if (stmt != null) {
+				Statements.release(stmt);
+			}
+			if (!readQuery) {
+				ResultCache.invalidate(alias);
+			}
+		}
+		if (readQuery) {
+			ResultCache.put(alias, cacheKey, result, generation);
+		}
+		return result;
+	}
+
+	public Object executeSql(String sqlString, String resultFormat) throws SQLException {
+		return executeSql(sqlString, resultFormat, null, null, null);
+	}
+
+	@SuppressWarnings("unchecked")
 	public List<LinkedHashMap<String, Object>> executeSql(String sqlString) throws SQLException {
-		ArrayList<LinkedHashMap<String, Object>> list = new ArrayList<LinkedHashMap<String, Object>>();
-		Statement stmt = DatabaseConnection.getConnection().createStatement();
+		String alias = DatabaseConnection.getCurrentConnectionAlias();
+		String cacheKey = "dictionaries:0:" + sqlString;
+		boolean readQuery = ResultCache.isReadQuery(sqlString);
+		if (readQuery) {
+			Object cached = ResultCache.get(alias, cacheKey);
+			if (cached != null) {
+				return (List<LinkedHashMap<String, Object>>) cached;
+			}
+		}
+		long generation = ResultCache.getGeneration(alias);
+		List<LinkedHashMap<String, Object>> rows;
+		Statement stmt = null;
 		try {
-			stmt.execute(sqlString);
-			ResultSet rs = (ResultSet) stmt.getResultSet();
-			if (rs != null) {
-				ResultSetMetaData rsmd = rs.getMetaData();
-				int numberOfColumns = rsmd.getColumnCount();
-				while (rs.next()) {
-				    LinkedHashMap<String, Object> row = new LinkedHashMap<String, Object>(numberOfColumns);
-					for (int i = 1; i <= numberOfColumns; ++i) {
-						row.put(rsmd.getColumnName(i), rs.getObject(i));
+			stmt = Statements.execute(DatabaseConnection.getConnection(), sqlString);
+			rows = readRows(stmt);
+		} finally {
+			if (stmt != null) {
+				Statements.release(stmt);
+			}
+			if (!readQuery) {
+				ResultCache.invalidate(alias);
+			}
+		}
+		if (readQuery) {
+			ResultCache.put(alias, cacheKey, rows, generation);
+		}
+		return rows;
+	}
+
+	@RobotKeyword("Executes the given SQL like 'Execute SQL', but returns all the results of it, for example "
+			+ "several result sets of a stored procedure or a multi-statement batch, instead of only the first "
+			+ "one. Results are returned as a list with a dictionary per result, in the order the database "
+			+ "returned them: " + "\n\n"
+			+ "| result set | Rows of a result set, in the given result format like with 'Execute SQL'. |\n"
+			+ "| update count | Amount of rows changed by a statement. |\n\n"
+			+ "Whether a procedure or a batch can return several results depends on the database and the "
+			+ "driver. Results are never taken from the result cache." + "\n\n" + "Example: \n"
+			+ "| ${results}= | Execute SQL With All Results | EXEC daily_report |\n"
+			+ "| Log Many | @{results}[0][result set] | |\n"
+			+ "| Should Be Equal As Integers | ${results}[1][update count] | 3 |")
+	@ArgumentNames({ "SQL String to execute", "Result format=dictionaries", "Fetch size=", "Maximum number of rows=",
+			"Query timeout=" })
+	public List<Map<String, Object>> executeSqlWithAllResults(String sqlString, String resultFormat,
+			String fetchSize, String maxRows, String queryTimeout) throws SQLException {
+		checkResultFormat(resultFormat);
+		StatementOptions options = DatabaseConnection.getStatementOptions().override(fetchSize, maxRows,
+				queryTimeout);
+		List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+		Statement stmt = null;
+		try {
+			stmt = Statements.execute(DatabaseConnection.getConnection(), sqlString, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY, options);
+			while (true) {
+				Map<String, Object> result = new LinkedHashMap<String, Object>();
+				ResultSet rs = stmt.getResultSet();
+				if (rs != null) {
+					result.put("result set", readResult(rs, resultFormat));
+				} else {
+					int updateCount = stmt.getUpdateCount();
+					if (updateCount == -1) {
+						break;
 					}
-					list.add(row);
+					result.put("update count", updateCount);
 				}
+				results.add(result);
+				stmt.getMoreResults();
 			}
 		} finally {
-			stmt.close();
+			if (stmt != null) {
+				Statements.release(stmt);
+			}
+			ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
 		}
+		return results;
+	}
 
-		return list;
+	public List<Map<String, Object>> executeSqlWithAllResults(String sqlString) throws SQLException {
+		return executeSqlWithAllResults(sqlString, "dictionaries", null, null, null);
 	}
 
-	@RobotKeyword("Executes the SQL statements contained in the given file without any "
-			+ "further modifications. The given SQL must be valid for the database that "
-			+ "is used. Any lines prefixed with \"REM\" or \"#\" are ignored. This keyword "
-			+ "can for example be used to setup database tables from some SQL install " + "script. " + "\n\n"
-			+ "Single SQL statements in the file can be spread over multiple lines, but "
-			+ "must be terminated with a semicolon \";\". A new statement must always "
-			+ "start in a new line and not in the same line where the previous statement "
-			+ "was terminated by a \";\". " + "\n\n"
-			+ "In case there is a problem in executing any of the SQL statements from "
-			+ "the file the execution is terminated and the operation is rolled back. " + "\n\n"
-			+ "*NOTE*: Use this method with care as you might cause damage to your "
-			+ "database, especially when using this in a productive environment. \n\n"
-			+ "*NOTE2*: If using keyword remotely, file need to be trasfered to server some "
-			+ "other way; this library is not doing the transfer." + "\n\n" + "Example: \n"
-			+ "| Execute SQL from File | myFile.sql | ")
-	@ArgumentNames({ "File containing SQL commands to execute" })
-	public void executeSqlFromFile(String fileName) throws SQLException, IOException, DatabaseLibraryException {
+	@RobotKeyword("Opens a cursor for reading the result of the given query page by page with 'Fetch Next "
+			+ "Rows', and returns a handle to it. Unlike with 'Execute SQL', rows are not loaded into memory "
+			+ "all at once, so this is meant for queries returning a large amount of rows. Fetch size tells "
+			+ "the driver how many rows to get from the database at a time. If not given, the one set with "
+			+ "'Set Statement Options' is used, or 1000 if none has been set. Query timeout overrides the "
+			+ "one set with 'Set Statement Options'. " + "\n\n"
+			+ "Cursor must be closed with 'Close Query Cursor'. If the active connection is pooled, cursor "
+			+ "keeps one connection of the pool until it's closed. " + "\n\n"
+			+ "Auto-commit is turned off while the cursor is open, as some databases (e.g. PostgreSQL) read "
+			+ "results in pages only inside a transaction. *NOTE*: If the active connection is not pooled, "
+			+ "the cursor shares it with the other keywords using the alias, and their changes are committed "
+			+ "only when the cursor is closed. Use a pooled alias, or another alias, to modify data while "
+			+ "a cursor is open. " + "\n\n" + "Example: \n"
+			+ "| ${cursor}= | Open Query Cursor | SELECT * FROM MySampleTable | 500 |\n"
+			+ "| ${rows}= | Fetch Next Rows | ${cursor} | 100 |\n" + "| Close Query Cursor | ${cursor} |")
+	@ArgumentNames({ "SQL String to execute", "Fetch size=", "Query timeout=" })
+	public String openQueryCursor(String sqlString, String fetchSize, String queryTimeout) throws SQLException {
+		StatementOptions options = DatabaseConnection.getStatementOptions().override(fetchSize, null, queryTimeout);
+		if (options.getFetchSize() == 0) {
+			options = options.override(String.valueOf(DEFAULT_CURSOR_FETCH_SIZE), null, null);
+		}
+		QueryCursor cursor = new QueryCursor(DatabaseConnection.getCurrentConnectionAlias(), sqlString, options);
+		String handle = "cursor-" + cursorCounter.incrementAndGet();
+		cursors.put(handle, cursor);
+		return handle;
+	}
 
-		DatabaseConnection.getConnection().setAutoCommit(false);
+	public String openQueryCursor(String sqlString, String fetchSize) throws SQLException {
+		return openQueryCursor(sqlString, fetchSize, null);
+	}
 
-		FileReader fr = new FileReader(new File(fileName));
-		BufferedReader br = new BufferedReader(fr);
+	public String openQueryCursor(String sqlString) throws SQLException {
+		return openQueryCursor(sqlString, null, null);
+	}
 
-		String sql = "";
-		String line = "";
-		while ((line = br.readLine()) != null) {
-			line = line.trim();
+	@RobotKeyword("Returns at most the given amount of next rows from the cursor opened with 'Open Query "
+			+ "Cursor', as a list of dictionaries like with 'Execute SQL'. When all the rows have been read, "
+			+ "an empty list is returned. " + "\n\n" + "Example: \n"
+			+ "| ${rows}= | Fetch Next Rows | ${cursor} | 100 |")
+	@ArgumentNames({ "Cursor handle", "Number of rows" })
+	public List<LinkedHashMap<String, Object>> fetchNextRows(String handle, String count) throws SQLException {
+		return getCursor(handle).fetch(Integer.valueOf(count));
+	}
 
-			// Ignore lines commented out in the given file
-			if (line.toLowerCase().startsWith("rem")) {
-				continue;
+	@RobotKeyword("Closes the cursor opened with 'Open Query Cursor', and gives its connection back if "
+			+ "it was pooled. " + "\n\n" + "Example: \n" + "| Close Query Cursor | ${cursor} |")
+	@ArgumentNames({ "Cursor handle" })
+	public void closeQueryCursor(String handle) throws SQLException {
+		QueryCursor cursor = cursors.remove(handle);
+		if (cursor == null) {
+			throw new IllegalStateException(String.format("No open cursor with handle %s", handle));
+		}
+		cursor.close();
+	}
+
+	@RobotKeyword("Executes the given SQL with the given parameters bound to its ? placeholders, in the "
+			+ "given order. Results are returned as a list of dictionaries like with 'Execute SQL'. " + "\n\n"
+			+ "As values are not part of the SQL text, the database can reuse the same execution plan (and "
+			+ "the library the same cached statement, see 'Set Statement Cache Size') for all the values. "
+			+ "Values are bound based on their type, so to compare against numeric columns give numbers, "
+			+ "e.g. ${42}, instead of strings. ${None} is bound as SQL NULL." + "\n\n" + "Example: \n"
+			+ "| Execute SQL With Parameters | INSERT INTO MySampleTable (Id, Name) VALUES (?, ?) | ${3} | John Doe |\n"
+			+ "| ${rows}= | Execute SQL With Parameters | SELECT * FROM MySampleTable WHERE Name = ? | John Doe |")
+	@ArgumentNames({ "SQL String to execute", "*Parameters" })
+	public List<LinkedHashMap<String, Object>> executeSqlWithParameters(String sqlString, List<Object> parameters)
+			throws SQLException {
+		Statement stmt = null;
+		try {
+			stmt = Statements.execute(DatabaseConnection.getConnection(), sqlString, parameters,
+					DatabaseConnection.getStatementOptions());
+			return readRows(stmt);
+		} finally {
+			if (stmt != null) {
+				Statements.release(stmt);
 			}
-			if (line.startsWith("#") || line.startsWith("--")) {
-				continue;
+			if (!ResultCache.isReadQuery(sqlString)) {
+				ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
 			}
+		}
+	}
 
-			// Add the line to the current SQL statement
-			if (sql.length() > 0) {
-				sql += " ";
-			}
-			sql += line;
+	@RobotKeyword("Inserts the given rows into the given table, and returns the amount of inserted rows. "
+			+ "Rows are given either as dictionaries of column names and values, all with the same columns, "
+			+ "or as lists of values for all the columns of the table, in table order. " + "\n\n"
+			+ "Rows are inserted with one INSERT statement with parameters, executed in JDBC batches of the "
+			+ "given size, which is much faster than inserting rows one by one, or with SQL built from the "
+			+ "values. Types of the columns are read from the database, so values can be given as strings "
+			+ "and are converted to the column types by the driver. None is inserted as NULL." + "\n\n"
+			+ "All rows are inserted in one transaction, which is rolled back if any of the rows fails. With "
+			+ "a positive commit interval, rows are committed after every that many rows instead, and only "
+			+ "the rows after the last commit are rolled back. If a transaction is already open on the "
+			+ "connection, e.g. with 'Begin Test Transaction', rows join it, commit interval is ignored and "
+			+ "on failure only the inserted rows are rolled back." + "\n\n" + "Example: \n"
+			+ "| ${row}= | Create Dictionary | Id=3 | Name=John Doe |\n"
+			+ "| ${rows}= | Create List | ${row} |\n"
+			+ "| Insert Rows Into Table | MySampleTable | ${rows} | \n"
+			+ "| ${inserted}= | Insert Rows Into Table | BigTable | ${rows} | Batch size=5000 | Commit interval=50000 |")
+	@ArgumentNames({ "Table name", "Rows to insert", "Batch size=1000", "Commit interval=0" })
+	public int insertRowsIntoTable(String tableName, List<Object> rows, String batchSize, String commitInterval)
+			throws SQLException, DatabaseLibraryException {
+		try {
+			return new RowInserter(DatabaseConnection.getConnection(), tableName).insert(rows,
+					Integer.valueOf(batchSize), Integer.valueOf(commitInterval));
+		} finally {
+			ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
+		}
+	}
 
-			// Check if SQL statement is complete, if yes execute
-			try {
-				if (sql.endsWith(";")) {
-					sql = sql.substring(0, sql.length() - 1);
-					System.out.println("Executing: " + sql);
-					executeSql(sql);
-					sql = "";
-				}
-			} catch (SQLException e) {
-				sql = "";
-				br.close();
-				DatabaseConnection.getConnection().rollback();
-				DatabaseConnection.getConnection().setAutoCommit(true);
-				throw new DatabaseLibraryException("Error executing: " + sql + " Execution from file rolled back!");
-			}
+	public int insertRowsIntoTable(String tableName, List<Object> rows)
+			throws SQLException, DatabaseLibraryException {
+		return insertRowsIntoTable(tableName, rows, "1000", "0");
+	}
+
+	@RobotKeyword("Executes the SQL statements contained in the given file without any "
+			+ "further modifications. The given SQL must be valid for the database that "
+			+ "is used. Any lines prefixed with \"REM\", \"#\" or \"--\" are ignored. This keyword "
+			+ "can for example be used to setup database tables from some SQL install " + "script. " + "\n\n"
+			+ "Single SQL statements in the file can be spread over multiple lines, and "
+			+ "must be terminated with the delimiter, by default a semicolon \";\". Delimiters inside "
+			+ "quotes, comments and PostgreSQL dollar quoted bodies are not statement delimiters. "
+			+ "Delimiters made of letters, like \"GO\", and \"/\" must be alone on their line. "
+			+ "Delimiter can also be changed inside the file with a \"DELIMITER //\" line. "
+			+ "File is read statement by statement, so also very large files can be executed. " + "\n\n"
+			+ "In case there is a problem in executing any of the SQL statements from "
+			+ "the file the execution is terminated and the operation is rolled back. Inside a transaction "
+			+ "begun with 'Begin Test Transaction' the statements are not committed, and on failure only "
+			+ "they are rolled back. " + "\n\n"
+			+ "With batch size of two or more, consecutive INSERT, UPDATE, DELETE and MERGE statements are "
+			+ "sent to the database in JDBC batches of at most that many statements, which is much faster "
+			+ "for large scripts, especially against remote databases. Statements in a batch are not logged "
+			+ "one by one, but a failed statement is reported with its position in the batch. " + "\n\n"
+			+ "*NOTE*: Use this method with care as you might cause damage to your "
+			+ "database, especially when using this in a productive environment. \n\n"
+			+ "*NOTE2*: If using keyword remotely, file need to be trasfered to server some "
+			+ "other way; this library is not doing the transfer." + "\n\n" + "Example: \n"
+			+ "| Execute SQL from File | myFile.sql | \n"
+			+ "| Execute SQL from File | myLargeFixture.sql | 500 | \n"
+			+ "| Execute SQL from File | create_procedures.sql | Delimiter=GO | ")
+	@ArgumentNames({ "File containing SQL commands to execute", "Batch size=0", "Delimiter=;" })
+	public void executeSqlFromFile(String fileName, String batchSize, String delimiter)
+			throws SQLException, IOException, DatabaseLibraryException {
+		try {
+			new SqlScriptExecutor(DatabaseConnection.getConnection(), Integer.valueOf(batchSize), false, delimiter)
+					.executeFile(fileName);
+		} finally {
+			ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
 		}
+	}
 
-		DatabaseConnection.getConnection().commit();
-		DatabaseConnection.getConnection().setAutoCommit(true);
-		br.close();
+	public void executeSqlFromFile(String fileName, String batchSize)
+			throws SQLException, IOException, DatabaseLibraryException {
+		executeSqlFromFile(fileName, batchSize, ";");
+	}
+
+	public void executeSqlFromFile(String fileName) throws SQLException, IOException, DatabaseLibraryException {
+		executeSqlFromFile(fileName, "0");
 	}
 
 	@RobotKeyword("Executes the SQL statements contained in the given file without any "
 			+ "further modifications. The given SQL must be valid for the database that "
-			+ "is used. Any lines prefixed with \"REM\" or \"#\" are ignored. This keyword "
+			+ "is used. Any lines prefixed with \"REM\", \"#\" or \"--\" are ignored. This keyword "
 			+ "can for example be used to setup database tables from some SQL install " + "script. " + "\n\n"
-			+ "Single SQL statements in the file can be spread over multiple lines, but "
-			+ "must be terminated with a semicolon \";\". A new statement must always "
-			+ "start in a new line and not in the same line where the previous statement "
-			+ "was terminated by a \";\". " + "\n\n"
+			+ "Single SQL statements in the file can be spread over multiple lines, and "
+			+ "must be terminated with the delimiter, by default a semicolon \";\". Delimiters inside "
+			+ "quotes, comments and PostgreSQL dollar quoted bodies are not statement delimiters. "
+			+ "Delimiters made of letters, like \"GO\", and \"/\" must be alone on their line. "
+			+ "Delimiter can also be changed inside the file with a \"DELIMITER //\" line. "
+			+ "File is read statement by statement, so also very large files can be executed. " + "\n\n"
 			+ "Any errors that might happen during execution of SQL statements are "
 			+ "logged to the Robot Log-file, but otherwise ignored. " + "\n\n"
+			+ "Batch size works like with 'Execute SQL From File'. If a statement of a batch fails, the "
+			+ "rest of the statements in that batch are still executed. " + "\n\n"
 			+ "*NOTE*: Use this method with care as you might cause damage to your "
 			+ "database, especially when using this in a productive environment. \n\n"
 			+ "*NOTE2*: If using keyword remotely, file need to be trasfered to server some "
 			+ "other way; this library is not doing the transfer." + "\n\n" + "Example: \n"
 			+ "| Execute SQL from File | myFile.sql | ")
-	@ArgumentNames({ "File containing SQL commands to execute" })
+	@ArgumentNames({ "File containing SQL commands to execute", "Batch size=0", "Delimiter=;" })
+	public void executeSqlFromFileIgnoreErrors(String fileName, String batchSize, String delimiter)
+			throws SQLException, IOException, DatabaseLibraryException {
+		try {
+			new SqlScriptExecutor(DatabaseConnection.getConnection(), Integer.valueOf(batchSize), true, delimiter)
+					.executeFile(fileName);
+		} finally {
+			ResultCache.invalidate(DatabaseConnection.getCurrentConnectionAlias());
+		}
+	}
+
+	public void executeSqlFromFileIgnoreErrors(String fileName, String batchSize)
+			throws SQLException, IOException, DatabaseLibraryException {
+		executeSqlFromFileIgnoreErrors(fileName, batchSize, ";");
+	}
+
 	public void executeSqlFromFileIgnoreErrors(String fileName)
 			throws SQLException, IOException, DatabaseLibraryException {
+		executeSqlFromFileIgnoreErrors(fileName, "0");
+	}
 
-		DatabaseConnection.getConnection().setAutoCommit(false);
+	@RobotKeyword("Starts executing the given SQL in the background and returns a handle for it, so that "
+			+ "other keywords can be run while the database is working. Result is got with 'Wait For SQL', "
+			+ "and the execution can be stopped with 'Cancel SQL'. Every started SQL must be waited for or "
+			+ "cancelled." + "\n\n"
+			+ "SQL is executed on a connection of its own: a connection borrowed from the pool if the "
+			+ "active alias is pooled, otherwise a new connection opened with the settings of the active "
+			+ "alias. That connection is in autocommit mode, so the SQL does not see uncommitted changes "
+			+ "of the keywords, and vice versa. With a pool, make sure it is larger than the amount of "
+			+ "SQL running at the same time. Statement options set with 'Set Statement Options' apply, and "
+			+ "query timeout can be overridden for this SQL only. " + "\n\n"
+			+ "Statements are executed on virtual threads when Java 21 or later is used." + "\n\n"
+			+ "Example: \n" + "| ${load}= | Start SQL Async | CALL load_test_data() |\n"
+			+ "| ${report}= | Start SQL Async | SELECT * FROM MyLargeView |\n" + "| Do Something Else |\n"
+			+ "| Wait For SQL | ${load} |\n" + "| ${rows}= | Wait For SQL | ${report} | 60 |")
+	@ArgumentNames({ "SQL String to execute", "Query timeout=" })
+	public String startSqlAsync(String sqlString, String queryTimeout) {
+		StatementOptions options = DatabaseConnection.getStatementOptions().override(null, null, queryTimeout);
+		AsyncQuery asyncQuery = new AsyncQuery(DatabaseConnection.getCurrentConnectionAlias(), sqlString, options);
+		String handle = "sql-" + asyncQueryCounter.incrementAndGet();
+		asyncQueries.put(handle, asyncQuery);
+		return handle;
+	}
 
-		FileReader fr = new FileReader(new File(fileName));
-		BufferedReader br = new BufferedReader(fr);
+	public String startSqlAsync(String sqlString) {
+		return startSqlAsync(sqlString, null);
+	}
 
-		String sql = "";
-		String line = "";
-		while ((line = br.readLine()) != null) {
-			line = line.trim();
+	@RobotKeyword("Waits for the SQL started with 'Start SQL Async' to complete, and returns its result as "
+			+ "a list of dictionaries like 'Execute SQL'. Fails if the SQL failed or was cancelled. " + "\n\n"
+			+ "If a timeout (in seconds) is given and the SQL is still running after it, keyword fails but "
+			+ "the SQL goes on, and can be waited for again or cancelled." + "\n\n" + "Example: \n"
+			+ "| ${rows}= | Wait For SQL | ${handle} |\n" + "| Wait For SQL | ${handle} | 30 |")
+	@ArgumentNames({ "SQL handle", "Timeout=" })
+	public List<LinkedHashMap<String, Object>> waitForSql(String handle, String timeout)
+			throws SQLException, DatabaseLibraryException {
+		AsyncQuery asyncQuery = getAsyncQuery(handle);
+		int seconds = timeout == null || timeout.isEmpty() ? 0 : Integer.valueOf(timeout);
+		try {
+			List<LinkedHashMap<String, Object>> rows = asyncQuery.await(seconds);
+			asyncQueries.remove(handle);
+			return rows;
+		} catch (TimeoutException e) {
+			throw new DatabaseLibraryException(
+					String.format("SQL with handle %s still running after %d seconds", handle, seconds));
+		} catch (SQLException e) {
+			asyncQueries.remove(handle);
+			throw e;
+		} catch (DatabaseLibraryException e) {
+			asyncQueries.remove(handle);
+			throw e;
+		}
+	}
 
-			// Ignore lines commented out in the given file
-			if (line.toLowerCase().startsWith("rem")) {
-				continue;
-			}
-			if (line.startsWith("#") || line.startsWith("--")) {
-				continue;
-			}
+	public List<LinkedHashMap<String, Object>> waitForSql(String handle)
+			throws SQLException, DatabaseLibraryException {
+		return waitForSql(handle, null);
+	}
 
-			// Add the line to the current SQL statement
-			if (sql.length() > 0) {
-				sql += " ";
-			}
-			sql += line;
+	@RobotKeyword("Cancels the SQL started with 'Start SQL Async'. Running statement is cancelled in the "
+			+ "database, if the driver supports it. Does nothing if the SQL has already completed, but its "
+			+ "result is discarded. " + "\n\n" + "Example: \n" + "| Cancel SQL | ${handle} |")
+	@ArgumentNames({ "SQL handle" })
+	public void cancelSql(String handle) {
+		AsyncQuery asyncQuery = asyncQueries.remove(handle);
+		if (asyncQuery == null) {
+			throw new IllegalStateException(String.format("No started SQL with handle %s", handle));
+		}
+		asyncQuery.cancel();
+	}
 
-			// Check if SQL statement is complete, if yes execute
-			try {
-				if (sql.endsWith(";")) {
-					sql = sql.substring(0, sql.length() - 1);
-					System.out.println("Executing: " + sql + "\n");
-					executeSql(sql);
-					sql = "";
-					System.out.println("\n");
-				}
-			} catch (SQLException e) {
-				System.out.println("Error executing: " + sql + "\n" + e.getMessage() + "\n\n");
-				sql = "";
-			}
+	@RobotKeyword("Executes the SQL statements contained in the given file like 'Execute SQL From File', "
+			+ "but executes the sections of the file at the same time. Section starts with a line "
+			+ "\"-- @section name\", and ends where the next section starts or at a line \"-- @sequential\". "
+			+ "For the other file keywords these lines are just comments. " + "\n\n"
+			+ "Consecutive sections must not depend on each other, as each of them is executed in its own "
+			+ "transaction on its own connection: a connection borrowed from the pool if the active alias is "
+			+ "pooled, otherwise a new connection opened with the settings of the active alias. With a pool, "
+			+ "make sure it is larger than the maximum amount of parallel sections. Statements outside "
+			+ "sections are executed in order, and committed before the following sections are started. "
+			+ "If one of them fails, the execution stops and the failed part is rolled back." + "\n\n"
+			+ "Failure policy tells what happens when a section fails: " + "\n\n"
+			+ "| stop | Sections still running are rolled back at their next statement, sections not started "
+			+ "yet are skipped, and the rest of the file is not executed. This is the default. |\n"
+			+ "| continue | Failed section is rolled back, but all other sections and the rest of the file are "
+			+ "executed. |\n\n"
+			+ "In both cases sections completed successfully stay committed, and the keyword fails listing "
+			+ "the failed sections. Execution time of each section is logged, and returned as a dictionary "
+			+ "of section names and milliseconds. Batch size and delimiter work like with 'Execute SQL From "
+			+ "File'. The file is not cached." + "\n\n" + "Example: \n"
+			+ "| ${timings}= | Execute SQL From File In Parallel | fixtures.sql | 8 |\n"
+			+ "| Execute SQL From File In Parallel | fixtures.sql | Failure policy=continue | Batch size=500 |")
+	@ArgumentNames({ "File containing SQL commands to execute", "Max parallel sections=4", "Failure policy=stop",
+			"Batch size=0", "Delimiter=;" })
+	public Map<String, Long> executeSqlFromFileInParallel(String fileName, String maxParallelSections,
+			String failurePolicy, String batchSize, String delimiter)
+			throws SQLException, IOException, DatabaseLibraryException {
+		ParallelScriptExecutor.FailurePolicy policy;
+		try {
+			policy = ParallelScriptExecutor.FailurePolicy.valueOf(failurePolicy.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format(
+					"Unknown failure policy %s, expected stop or continue", failurePolicy));
 		}
+		String alias = DatabaseConnection.getCurrentConnectionAlias();
+		try {
+			return new ParallelScriptExecutor(alias, Integer.valueOf(maxParallelSections), policy,
+					Integer.valueOf(batchSize), delimiter).executeFile(fileName);
+		} finally {
+			ResultCache.invalidate(alias);
+		}
+	}
+
+	public Map<String, Long> executeSqlFromFileInParallel(String fileName, String maxParallelSections,
+			String failurePolicy) throws SQLException, IOException, DatabaseLibraryException {
+		return executeSqlFromFileInParallel(fileName, maxParallelSections, failurePolicy, "0", ";");
+	}
 
-		DatabaseConnection.getConnection().commit();
-		DatabaseConnection.getConnection().setAutoCommit(true);
-		br.close();
+	@RobotKeyword("Sets how many SQL files the file keywords keep in their cache. Statements of the files "
+			+ "executed with 'Execute SQL From File' and 'Execute SQL From File Ignore Errors' are cached, "
+			+ "so that a file executed repeatedly, e.g. in every test setup, is read and parsed only once. "
+			+ "Cached statements are used as long as the modification time and size of the file stay the "
+			+ "same. Files over 10 MB are not cached. Default size is 16, and zero disables the cache." + "\n\n"
+			+ "Example: \n" + "| Set Script Cache Size | 50 |")
+	@ArgumentNames({ "Number of files to cache" })
+	public void setScriptCacheSize(String size) {
+		ScriptCache.setMaxSize(Integer.valueOf(size));
+	}
+
+	@RobotKeyword("Returns statistics of the SQL file cache as a dictionary: configured size, amount of "
+			+ "currently cached files and cumulative counts of cache hits and misses." + "\n\n"
+			+ "Example: \n" + "| ${stats}= | Get Script Cache Statistics |\n" + "| Log | ${stats}[hits] |")
+	public Map<String, Object> getScriptCacheStatistics() {
+		return ScriptCache.getStatistics();
 	}
 
 	@RobotKeyword("Reads a single value from the given table and column based on the "
@@ -201,29 +568,175 @@ public class Query {
 	@ArgumentNames({ "Table name", "Column to get", "Where clause to identify the row" })
 	public String readSingleValueFromTable(String tableName, String columnName, String whereClause)
 			throws SQLException, DatabaseLibraryException {
+		return readSingleValueFromTable(tableName, columnName, whereClause, null);
+	}
 
-		String ret = "";
+	@RobotKeyword("Same as 'Read Single Value From Table', but the where-clause can contain ? placeholders, "
+			+ "which are bound to the given parameters in the given order. " + "\n\n" + "Example: \n"
+			+ "| ${VALUE}= | Read Single Value From Table With Parameters | MySampleTable | EMail | Name=? | John Doe |")
+	@ArgumentNames({ "Table name", "Column to get", "Where clause to identify the row", "*Parameters" })
+	public String readSingleValueFromTableWithParameters(String tableName, String columnName, String whereClause,
+			List<Object> parameters) throws SQLException, DatabaseLibraryException {
+		return readSingleValueFromTable(tableName, columnName, whereClause, parameters);
+	}
 
+	@RobotKeyword("Reads the given columns of a single row from the given table, and returns them as a "
+			+ "dictionary of column names and values, like one row of 'Execute SQL'. Row is identified with "
+			+ "the where-clause, which can contain ? placeholders bound to the given parameters. All the values "
+			+ "are read in one query, instead of one 'Read Single Value From Table' per column. " + "\n\n"
+			+ "If the where-clause identifies more than one row this will result in an error. If no row "
+			+ "is found, an empty dictionary is returned." + "\n\n" + "Example: \n"
+			+ "| ${row}= | Read Row As Dictionary | MySampleTable | Name,EMail | Id=? | ${1} |\n"
+			+ "| Should Be Equal | ${row}[EMAIL] | john.doe@x-files |")
+	@ArgumentNames({ "Table name", "Columns to get (comma separated)", "Where clause to identify the row",
+			"*Parameters" })
+	public Map<String, Object> readRowAsDictionary(String tableName, String columnNames, String whereClause,
+			List<Object> parameters) throws SQLException, DatabaseLibraryException {
+		String sql = "select " + columnNames + " from " + tableName + " where " + whereClause;
+		List<LinkedHashMap<String, Object>> rows;
+		Statement stmt = Statements.execute(DatabaseConnection.getConnection(), sql, emptyToNull(parameters),
+				getSingleRowOptions());
+		try {
+			rows = Statements.readRows(stmt.getResultSet(), 2);
+		} finally {
+			Statements.release(stmt);
+		}
+		if (rows.size() > 1) {
+			throw new DatabaseLibraryException("More than one row fetched for: " + sql);
+		}
+		return rows.isEmpty() ? new LinkedHashMap<String, Object>() : rows.get(0);
+	}
+
+	public Map<String, Object> readRowAsDictionary(String tableName, String columnNames, String whereClause)
+			throws SQLException, DatabaseLibraryException {
+		return readRowAsDictionary(tableName, columnNames, whereClause, null);
+	}
+
+	@RobotKeyword("Reads the values of the given column for several keys at once, and returns them as a "
+			+ "dictionary of keys and values. Rows are identified by the value of the key column, and the "
+			+ "values of all the keys are read with one query (per 1000 keys), instead of one 'Read Single "
+			+ "Value From Table' per key. " + "\n\n"
+			+ "Keys are bound as parameters with their types, so use e.g. ${1} for numeric key columns. "
+			+ "Like with 'Read Single Value From Table', value of a key not found is an empty string, and "
+			+ "a key matching more than one row results in an error." + "\n\n" + "Example: \n"
+			+ "| ${emails}= | Read Values From Table | MySampleTable | EMail | Id | ${1} | ${2} |\n"
+			+ "| Should Be Equal | ${emails}[1] | john.doe@x-files |")
+	@ArgumentNames({ "Table name", "Column to get", "Key column", "*Keys" })
+	public Map<String, String> readValuesFromTable(String tableName, String columnName, String keyColumn,
+			List<Object> keys) throws SQLException, DatabaseLibraryException {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (Object key : keys) {
+			values.put(String.valueOf(key), "");
+		}
+		Set<String> found = new HashSet<String>();
+		for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_QUERY) {
+			List<Object> chunk = keys.subList(from, Math.min(from + MAX_KEYS_PER_QUERY, keys.size()));
+			StringBuilder sql = new StringBuilder("select ").append(keyColumn).append(", ").append(columnName)
+					.append(" from ").append(tableName).append(" where ").append(keyColumn).append(" in (");
+			for (int i = 0; i < chunk.size(); i++) {
+				sql.append(i == 0 ? "?" : ", ?");
+			}
+			sql.append(")");
+			Statement stmt = Statements.execute(DatabaseConnection.getConnection(), sql.toString(), chunk);
+			try {
+				ResultSet rs = stmt.getResultSet();
+				while (rs.next()) {
+					String key = rs.getString(1);
+					if (!found.add(key)) {
+						throw new DatabaseLibraryException(
+								String.format("More than one value fetched for key %s: %s", key, sql));
+					}
+					values.put(key, rs.getString(2));
+				}
+			} finally {
+				Statements.release(stmt);
+			}
+		}
+		return values;
+	}
+
+	private String readSingleValueFromTable(String tableName, String columnName, String whereClause,
+			List<Object> parameters) throws SQLException, DatabaseLibraryException {
+		parameters = emptyToNull(parameters);
 		String sql = "select " + columnName + " from " + tableName + " where " + whereClause;
-		Statement stmt = DatabaseConnection.getConnection().createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		String alias = DatabaseConnection.getCurrentConnectionAlias();
+		String cacheKey = "single:" + sql + (parameters != null ? "\n" + parameters : "");
+		Object cached = ResultCache.get(alias, cacheKey);
+		if (cached != null) {
+			return (String) cached;
+		}
+		long generation = ResultCache.getGeneration(alias);
+
+		String ret = "";
+		// Forward-only result limited to two rows is enough to tell if there
+		// is more than one row, and scrollable results would be materialized
+		// by many drivers
+		Statement stmt = Statements.executeRepeated(DatabaseConnection.getConnection(), sql, parameters,
+				getSingleRowOptions());
 		try {
-			stmt.executeQuery(sql);
-			ResultSet rs = (ResultSet) stmt.getResultSet();
+			ResultSet rs = stmt.getResultSet();
 
-			if (rs.first()) {
-				ret = rs.getString(columnName);
+			if (rs.next()) {
+				ret = rs.getString(1);
 			}
 
 			if (rs.next()) {
 				throw new DatabaseLibraryException("More than one value fetched for: " + sql);
 			}
 		} finally {
-			// stmt.close() automatically takes care of its ResultSet, so no
-			// rs.close()
-			stmt.close();
+			Statements.release(stmt);
 		}
 
+		ResultCache.put(alias, cacheKey, ret, generation);
 		return ret;
 	}
 
+	private StatementOptions getSingleRowOptions() {
+		return DatabaseConnection.getStatementOptions().override(null, "2", null);
+	}
+
+	private List<Object> emptyToNull(List<Object> parameters) {
+		return parameters == null || parameters.isEmpty() ? null : parameters;
+	}
+
+	private QueryCursor getCursor(String handle) {
+		QueryCursor cursor = cursors.get(handle);
+		if (cursor == null) {
+			throw new IllegalStateException(String.format("No open cursor with handle %s", handle));
+		}
+		return cursor;
+	}
+
+	private void checkResultFormat(String resultFormat) {
+		if (!RESULT_FORMATS.contains(resultFormat.toLowerCase())) {
+			throw new IllegalArgumentException(String.format("Unknown result format %s, expected one of %s",
+					resultFormat, RESULT_FORMATS));
+		}
+	}
+
+	private Object readResult(ResultSet rs, String resultFormat) throws SQLException {
+		if ("dictionaries".equalsIgnoreCase(resultFormat)) {
+			return Statements.readRows(rs, Integer.MAX_VALUE);
+		} else if ("rows".equalsIgnoreCase(resultFormat)) {
+			return Statements.readTable(rs);
+		} else {
+			return Statements.readColumns(rs);
+		}
+	}
+
+	private AsyncQuery getAsyncQuery(String handle) {
+		AsyncQuery asyncQuery = asyncQueries.get(handle);
+		if (asyncQuery == null) {
+			throw new IllegalStateException(String.format("No started SQL with handle %s", handle));
+		}
+		return asyncQuery;
+	}
+
+	private List<LinkedHashMap<String, Object>> readRows(Statement stmt) throws SQLException {
+		ResultSet rs = (ResultSet) stmt.getResultSet();
+		if (rs == null) {
+			return new ArrayList<LinkedHashMap<String, Object>>();
+		}
+		return Statements.readRows(rs, Integer.MAX_VALUE);
+	}
 }
@@ -0,0 +1,86 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Forward-only result set kept open over several keywords, so that a large
+ * result can be read page by page without loading it all into memory.
+ * Cursor has its own connection when the alias is pooled, as borrowed
+ * connections are otherwise given back after each keyword.
+ * <p>
+ * Some drivers (e.g. PostgreSQL) stream results only inside a transaction,
+ * so auto-commit is turned off for the lifetime of the cursor. On a single
+ * connection the previous auto-commit is restored when the cursor is closed,
+ * and the pool resets it for pooled connections.
+ */
+class QueryCursor {
+
+	private final String alias;
+	private final Connection connection;
+	private final Statement stmt;
+	private final ResultSet rs;
+	private boolean restoreAutoCommit = false;
+	private boolean exhausted = false;
+
+	QueryCursor(String alias, String sql, StatementOptions options) throws SQLException {
+		this.alias = alias;
+		this.connection = DatabaseConnection.borrowConnection(alias);
+		Statement statement = null;
+		try {
+			if (connection.getAutoCommit()) {
+				connection.setAutoCommit(false);
+				restoreAutoCommit = !DatabaseConnection.isPooled(alias);
+			}
+			statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			options.applyTo(statement);
+			Statements.executeWithTimeout(statement, sql, options.getQueryTimeout());
+			this.rs = statement.getResultSet();
+			this.stmt = statement;
+		} catch (SQLException e) {
+			if (statement != null) {
+				statement.close();
+			}
+			release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns at most given amount of next rows. Empty list is returned once
+	 * all rows have been read.
+	 */
+	synchronized List<LinkedHashMap<String, Object>> fetch(int count) throws SQLException {
+		if (exhausted) {
+			return new ArrayList<LinkedHashMap<String, Object>>();
+		}
+		List<LinkedHashMap<String, Object>> rows = Statements.readRows(rs, count);
+		exhausted = rows.size() < count;
+		return rows;
+	}
+
+	synchronized void close() throws SQLException {
+		try {
+			rs.close();
+			stmt.close();
+		} finally {
+			release();
+		}
+	}
+
+	private void release() throws SQLException {
+		try {
+			if (restoreAutoCommit) {
+				// Ends the read-only transaction of the cursor
+				connection.setAutoCommit(true);
+			}
+		} finally {
+			DatabaseConnection.returnConnection(alias, connection);
+		}
+	}
+}
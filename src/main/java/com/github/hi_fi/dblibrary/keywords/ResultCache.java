@@ -0,0 +1,256 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Results of read queries, cached separately for each alias for a limited
+ * time, so that reference data checks repeated through a suite don't go to
+ * the database every time. Cache is bounded by the amount of entries and
+ * optionally by their estimated size in bytes, and least recently used
+ * entries are evicted first. All cached results of an alias are dropped when
+ * the library executes anything else than a read query with that alias.
+ * Results are stored with the generation of the cache read before the query,
+ * so that a result read while another thread changed the data and invalidated
+ * the cache is not stored.
+ * <p>
+ * Cache is opt-in: aliases without {@link #configure} have no cache.
+ */
+class ResultCache {
+
+	private static final Pattern READ_QUERY = Pattern.compile("^(\\s*/\\*.*?\\*/)*\\s*(select|with|values)\\b",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private static final Pattern WRITE_KEYWORD = Pattern.compile("\\b(insert|update|delete|merge|into|nextval)\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final ConcurrentMap<String, ResultCache> caches = new ConcurrentHashMap<String, ResultCache>();
+
+	// Unique over all caches, so that a generation of a replaced cache is
+	// never valid in its successor
+	private static final AtomicLong generations = new AtomicLong();
+
+	private final long ttlMillis;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<String, CachedResult>(16, 0.75f,
+			true);
+	private long generation = generations.incrementAndGet();
+	private long bytes = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	private long invalidationCount = 0;
+
+	private ResultCache(long ttlMillis, int maxEntries, long maxBytes) {
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Enables the cache for the alias with given time to live, replacing the
+	 * earlier cache of the alias. Zero time to live or maximum entries
+	 * disables the cache.
+	 */
+	static void configure(String alias, int ttlSeconds, int maxEntries, long maxBytes) {
+		if (ttlSeconds <= 0 || maxEntries <= 0) {
+			caches.remove(alias);
+		} else {
+			caches.put(alias, new ResultCache(ttlSeconds * 1000L, maxEntries, maxBytes));
+		}
+	}
+
+	static void remove(String alias) {
+		caches.remove(alias);
+	}
+
+	static boolean isEnabled(String alias) {
+		return caches.containsKey(alias);
+	}
+
+	/**
+	 * Checks if the SQL only reads data, so that its result can be cached and
+	 * executing it does not invalidate the cache.
+	 */
+	static boolean isReadQuery(String sql) {
+		return READ_QUERY.matcher(sql).find() && !WRITE_KEYWORD.matcher(sql).find();
+	}
+
+	/**
+	 * Returns a copy of the cached result, or null if there is no valid
+	 * result cached with the key.
+	 */
+	static Object get(String alias, String key) {
+		ResultCache cache = caches.get(alias);
+		return cache != null ? cache.lookup(key) : null;
+	}
+
+	/**
+	 * Returns the current generation of the cache of the alias, to be given
+	 * to {@link #put} after the query.
+	 */
+	static long getGeneration(String alias) {
+		ResultCache cache = caches.get(alias);
+		return cache != null ? cache.currentGeneration() : 0;
+	}
+
+	/**
+	 * Caches the result, unless the cache has been invalidated after the
+	 * given generation was read.
+	 */
+	static void put(String alias, String key, Object result, long generation) {
+		ResultCache cache = caches.get(alias);
+		if (cache != null) {
+			cache.store(key, result, generation);
+		}
+	}
+
+	/**
+	 * Drops all cached results of the alias, as its data may have changed.
+	 */
+	static void invalidate(String alias) {
+		ResultCache cache = caches.get(alias);
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	static Map<String, Object> getStatistics(String alias) {
+		ResultCache cache = caches.get(alias);
+		if (cache == null) {
+			throw new IllegalStateException(String.format("No result cache enabled for alias %s.", alias));
+		}
+		return cache.statistics();
+	}
+
+	private synchronized Object lookup(String key) {
+		CachedResult result = results.get(key);
+		if (result != null && result.expires > System.currentTimeMillis()) {
+			hitCount++;
+			return copy(result.value);
+		}
+		if (result != null) {
+			results.remove(key);
+			bytes -= result.bytes;
+		}
+		missCount++;
+		return null;
+	}
+
+	private synchronized long currentGeneration() {
+		return generation;
+	}
+
+	private synchronized void store(String key, Object value, long generation) {
+		if (generation != this.generation) {
+			return;
+		}
+		long size = estimateSize(value) + 2 * key.length();
+		if (maxBytes > 0 && size > maxBytes) {
+			return;
+		}
+		CachedResult previous = results.put(key,
+				new CachedResult(copy(value), size, System.currentTimeMillis() + ttlMillis));
+		if (previous != null) {
+			bytes -= previous.bytes;
+		}
+		bytes += size;
+		Iterator<CachedResult> eldest = results.values().iterator();
+		while (results.size() > maxEntries || (maxBytes > 0 && bytes > maxBytes)) {
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+			evictionCount++;
+		}
+	}
+
+	private synchronized void clear() {
+		generation = generations.incrementAndGet();
+		if (!results.isEmpty()) {
+			results.clear();
+			bytes = 0;
+			invalidationCount++;
+		}
+	}
+
+	private synchronized Map<String, Object> statistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("ttl", ttlMillis / 1000);
+		statistics.put("size", maxEntries);
+		statistics.put("max bytes", maxBytes);
+		statistics.put("cached", results.size());
+		statistics.put("bytes", bytes);
+		statistics.put("hits", hitCount);
+		statistics.put("misses", missCount);
+		statistics.put("evictions", evictionCount);
+		statistics.put("invalidations", invalidationCount);
+		return statistics;
+	}
+
+	/**
+	 * Copies the lists and maps of the result, so that changes made to a
+	 * returned result don't change the cached one. Column values are not
+	 * copied.
+	 */
+	private static Object copy(Object value) {
+		if (value instanceof List) {
+			List<Object> list = new ArrayList<Object>();
+			for (Object item : (List<?>) value) {
+				list.add(copy(item));
+			}
+			return list;
+		}
+		if (value instanceof Map) {
+			LinkedHashMap<Object, Object> map = new LinkedHashMap<Object, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				map.put(entry.getKey(), copy(entry.getValue()));
+			}
+			return map;
+		}
+		return value;
+	}
+
+	/**
+	 * Rough estimate of the memory used by the result: strings take two bytes
+	 * per character, other values and references a few words.
+	 */
+	private static long estimateSize(Object value) {
+		if (value instanceof List) {
+			long size = 16;
+			for (Object item : (List<?>) value) {
+				size += 8 + estimateSize(item);
+			}
+			return size;
+		}
+		if (value instanceof Map) {
+			long size = 48;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+			}
+			return size;
+		}
+		if (value instanceof String) {
+			return 40 + 2 * ((String) value).length();
+		}
+		return 16;
+	}
+
+	private static class CachedResult {
+		final Object value;
+		final long bytes;
+		final long expires;
+
+		CachedResult(Object value, long bytes, long expires) {
+			this.value = value;
+			this.bytes = bytes;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Counts the rows of a table, or only up to a limit, with one query. How the
+ * rows are counted is resolved once per physical connection from the database
+ * product, and cached:
+ * <ul>
+ * <li>count(*) read by column index, as drivers label the column differently,
+ * with the limit pushed down with the row limiting clause of the product
+ * (FETCH FIRST, LIMIT or TOP), so that at most limit rows are looked at</li>
+ * <li>count(*) without a row limiting clause, if the database rejects it,
+ * with limited counts read from at most limit rows with max rows</li>
+ * <li>reading the rows, if the database doesn't support count(*)</li>
+ * </ul>
+ * Until a strategy has succeeded on the connection, the next one is tried
+ * when a query fails, and a strategy is given up only when the next one
+ * succeeds, so that errors in the table name or where-clause don't change
+ * the strategy. Once resolved, errors are thrown as such, without
+ * savepoints for the fallback.
+ */
+class RowCounter {
+
+	enum Strategy {
+		FETCH_FIRST, LIMIT, TOP, COUNT, SCAN
+	}
+
+	private static final Map<Connection, Strategy> strategies = Collections
+			.synchronizedMap(new WeakHashMap<Connection, Strategy>());
+
+	private final Connection connection;
+
+	RowCounter(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Returns the amount of rows in the table matching the where-clause (if
+	 * given), but at most limit. Limit of Long.MAX_VALUE counts all the rows.
+	 */
+	long count(String tableName, String where, List<Object> parameters, long limit) throws SQLException {
+		String from = " from " + tableName + (where != null ? " where " + where : "");
+		boolean bounded = limit < Integer.MAX_VALUE;
+		int maxRows = bounded ? (int) limit : 0;
+		Strategy resolved = strategies.get(connection);
+		Strategy guessed = resolved != null ? resolved
+				: getStrategy(connection.getMetaData().getDatabaseProductName().toLowerCase());
+		Strategy strategy = bounded || guessed.compareTo(Strategy.COUNT) >= 0 ? guessed : Strategy.COUNT;
+		if (resolved != null) {
+			// Errors of a resolved strategy are in the table name or where-clause
+			return count(strategy, from, parameters, maxRows);
+		}
+		SQLException firstError = null;
+		for (Strategy attempt = strategy;; attempt = Strategy.values()[attempt.ordinal() + 1]) {
+			// Failed statement aborts the whole transaction e.g. in PostgreSQL
+			Savepoint savepoint = attempt != Strategy.SCAN && !connection.getAutoCommit() ? connection.setSavepoint()
+					: null;
+			try {
+				long count = count(attempt, from, parameters, maxRows);
+				if (attempt != strategy) {
+					System.out.println("Counting rows with " + attempt + " instead of " + strategy);
+				}
+				// Plain count(*) tells nothing about the row limiting clause
+				if (strategy == guessed || attempt != strategy) {
+					strategies.put(connection, attempt);
+				}
+				return count;
+			} catch (SQLException e) {
+				if (savepoint != null) {
+					connection.rollback(savepoint);
+				}
+				if (firstError == null) {
+					firstError = e;
+				} else {
+					firstError.addSuppressed(e);
+				}
+				if (attempt == Strategy.SCAN) {
+					throw firstError;
+				}
+			} finally {
+				if (savepoint != null) {
+					releaseQuietly(savepoint);
+				}
+			}
+		}
+	}
+
+	private long count(Strategy strategy, String from, List<Object> parameters, int limit) throws SQLException {
+		String sql;
+		StatementOptions options = DatabaseConnection.getStatementOptions().withoutMaxRows();
+		switch (strategy) {
+		case FETCH_FIRST:
+			sql = "select count(*) from (select 1 as x" + from + " fetch first " + limit + " rows only) t";
+			break;
+		case LIMIT:
+			sql = "select count(*) from (select 1 as x" + from + " limit " + limit + ") t";
+			break;
+		case TOP:
+			sql = "select count(*) from (select top " + limit + " 1 as x" + from + ") t";
+			break;
+		case COUNT:
+			if (limit > 0) {
+				return readRows(from, parameters, options, limit);
+			}
+			sql = "select count(*)" + from;
+			break;
+		default:
+			return readRows(from, parameters, options, limit);
+		}
+		Statement stmt = Statements.executeRepeated(connection, sql, parameters, options);
+		try {
+			ResultSet rs = stmt.getResultSet();
+			rs.next();
+			return rs.getLong(1);
+		} finally {
+			Statements.release(stmt);
+		}
+	}
+
+	/**
+	 * Reads the rows, but at most limit (if positive) with max rows.
+	 */
+	private long readRows(String from, List<Object> parameters, StatementOptions options, int limit)
+			throws SQLException {
+		Statement stmt = Statements.executeRepeated(connection, "select 1 as x" + from, parameters,
+				limit > 0 ? options.override(null, String.valueOf(limit), null) : options);
+		try {
+			ResultSet rs = stmt.getResultSet();
+			long num = 0;
+			while ((limit <= 0 || num < limit) && rs.next()) {
+				num++;
+			}
+			return num;
+		} finally {
+			Statements.release(stmt);
+		}
+	}
+
+	/**
+	 * Returns the row limiting clause of the database product. FETCH FIRST is
+	 * the SQL standard one, and used for unknown databases.
+	 */
+	static Strategy getStrategy(String product) {
+		if (product.contains("mysql") || product.contains("mariadb") || product.contains("sqlite")) {
+			return Strategy.LIMIT;
+		}
+		if (product.contains("microsoft sql server") || product.contains("sybase")
+				|| product.contains("adaptive server")) {
+			return Strategy.TOP;
+		}
+		return Strategy.FETCH_FIRST;
+	}
+
+	private void releaseQuietly(Savepoint savepoint) {
+		try {
+			connection.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			// Not supported by all drivers, released with the transaction
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Inserts rows into a table with one prepared INSERT statement executed in
+ * JDBC batches. Columns and their SQL types are read from
+ * {@link DatabaseMetaData}, so that string values (as they usually come from
+ * test data) are converted to the column types by the driver, and nulls are
+ * bound with the column type.
+ */
+class RowInserter {
+
+	private static final List<Integer> CHARACTER_TYPES = Arrays.asList(Types.CHAR, Types.VARCHAR,
+			Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR, Types.CLOB, Types.NCLOB);
+
+	private final Connection connection;
+	private final String tableName;
+	private final Map<String, Column> columns;
+	private final String identifierQuote;
+
+	RowInserter(Connection connection, String tableName) throws SQLException, DatabaseLibraryException {
+		this.connection = connection;
+		this.tableName = tableName;
+		this.columns = readColumns();
+		String quote = connection.getMetaData().getIdentifierQuoteString();
+		this.identifierQuote = quote == null ? "" : quote.trim();
+	}
+
+	/**
+	 * Inserts the rows, given either as maps of column name to value, or as
+	 * lists of values for all the columns in table order. Returns the amount
+	 * of inserted rows.
+	 * <p>
+	 * If the connection has auto-commit enabled, rows are inserted in one
+	 * transaction, or committed after every commit interval rows when the
+	 * interval is positive. If a transaction is already open, rows join it,
+	 * and on failure only they are rolled back.
+	 */
+	int insert(List<?> rows, int batchSize, int commitInterval) throws SQLException, DatabaseLibraryException {
+		return insert(rows.iterator(), batchSize, commitInterval);
+	}
+
+	/**
+	 * Inserts the rows like {@link #insert(List, int, int)}, reading them from
+	 * the iterator only as they are inserted.
+	 */
+	int insert(Iterator<?> rows, int batchSize, int commitInterval) throws SQLException, DatabaseLibraryException {
+		if (!rows.hasNext()) {
+			return 0;
+		}
+		Object row = rows.next();
+		List<Column> targetColumns = getTargetColumns(row);
+		boolean manageTransaction = connection.getAutoCommit();
+		Savepoint savepoint = null;
+		if (manageTransaction) {
+			connection.setAutoCommit(false);
+		} else {
+			savepoint = connection.setSavepoint();
+		}
+		boolean completed = false;
+		int count = 0;
+		PreparedStatement stmt = connection.prepareStatement(buildInsert(targetColumns));
+		try {
+			StatementOptions options = DatabaseConnection.getStatementOptions().withoutMaxRows();
+			options.applyTo(stmt);
+			int queryTimeout = options.getQueryTimeout();
+			int batched = 0;
+			while (true) {
+				bindRow(stmt, targetColumns, row, count);
+				stmt.addBatch();
+				batched++;
+				count++;
+				boolean commitDue = manageTransaction && commitInterval > 0 && count % commitInterval == 0;
+				if (batched >= Math.max(batchSize, 1) || commitDue) {
+					executeBatch(stmt, queryTimeout, count - batched, batched);
+					batched = 0;
+				}
+				if (commitDue) {
+					connection.commit();
+				}
+				if (!rows.hasNext()) {
+					break;
+				}
+				row = rows.next();
+			}
+			if (batched > 0) {
+				executeBatch(stmt, queryTimeout, count - batched, batched);
+			}
+			if (manageTransaction) {
+				connection.commit();
+			}
+			completed = true;
+		} finally {
+			stmt.close();
+			if (manageTransaction) {
+				if (!completed) {
+					connection.rollback();
+				}
+				connection.setAutoCommit(true);
+			} else if (!completed) {
+				connection.rollback(savepoint);
+			}
+		}
+		return count;
+	}
+
+	private void executeBatch(PreparedStatement stmt, int queryTimeout, int firstRow, int size)
+			throws SQLException, DatabaseLibraryException {
+		try {
+			Statements.executeBatchWithTimeout(stmt, queryTimeout);
+		} catch (BatchUpdateException e) {
+			int[] updateCounts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+			int failed = -1;
+			if (updateCounts.length < size) {
+				// Driver stopped at the failed row
+				failed = updateCounts.length;
+			} else {
+				for (int i = 0; i < updateCounts.length && failed < 0; i++) {
+					if (updateCounts[i] == PreparedStatement.EXECUTE_FAILED) {
+						failed = i;
+					}
+				}
+			}
+			String row = failed >= 0 ? "row " + (firstRow + failed + 1)
+					: String.format("rows %d-%d", firstRow + 1, firstRow + size);
+			throw new DatabaseLibraryException(String.format("Error inserting %s into %s: %s", row, tableName,
+					e.getMessage()));
+		}
+	}
+
+	private List<Column> getTargetColumns(Object firstRow) throws DatabaseLibraryException {
+		if (!(firstRow instanceof Map)) {
+			return new ArrayList<Column>(columns.values());
+		}
+		List<Column> targetColumns = new ArrayList<Column>();
+		for (Object name : ((Map<?, ?>) firstRow).keySet()) {
+			targetColumns.add(getColumn(String.valueOf(name)));
+		}
+		return targetColumns;
+	}
+
+	private Column getColumn(String name) throws DatabaseLibraryException {
+		Column column = columns.get(name.toUpperCase());
+		if (column == null) {
+			throw new DatabaseLibraryException(String.format("Column %s was not found in table %s", name, tableName));
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the given columns of the table as a comma separated list of
+	 * quoted names, e.g. for a COPY statement.
+	 */
+	String getColumnList(List<String> names) throws DatabaseLibraryException {
+		List<Column> targetColumns = new ArrayList<Column>();
+		for (String name : names) {
+			targetColumns.add(getColumn(name));
+		}
+		return getColumnList(targetColumns);
+	}
+
+	private String getColumnList(Collection<Column> targetColumns) {
+		List<String> names = new ArrayList<String>();
+		for (Column column : targetColumns) {
+			// Names are quoted as stored, so that mixed case names work too
+			names.add(identifierQuote + column.name + identifierQuote);
+		}
+		return StringUtils.join(names, ", ");
+	}
+
+	private String buildInsert(List<Column> targetColumns) {
+		return "INSERT INTO " + tableName + " (" + getColumnList(targetColumns) + ") VALUES ("
+				+ StringUtils.repeat("?", ", ", targetColumns.size()) + ")";
+	}
+
+	private void bindRow(PreparedStatement stmt, List<Column> targetColumns, Object row, int rowIndex)
+			throws SQLException, DatabaseLibraryException {
+		List<?> values;
+		if (row instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) row;
+			values = getValues(map, targetColumns, rowIndex);
+		} else if (row instanceof List) {
+			values = (List<?>) row;
+		} else {
+			throw new DatabaseLibraryException(
+					String.format("Row %d is not a dictionary or a list: %s", rowIndex + 1, row));
+		}
+		if (values.size() != targetColumns.size()) {
+			throw new DatabaseLibraryException(String.format("Row %d has %d values, expected %d", rowIndex + 1,
+					values.size(), targetColumns.size()));
+		}
+		for (int i = 0; i < values.size(); i++) {
+			Object value = values.get(i);
+			int type = targetColumns.get(i).type;
+			if (value == null) {
+				stmt.setNull(i + 1, type);
+			} else if (value instanceof String && !CHARACTER_TYPES.contains(type)) {
+				stmt.setObject(i + 1, value, type);
+			} else {
+				Statements.bind(stmt, i + 1, value);
+			}
+		}
+	}
+
+	private List<Object> getValues(Map<?, ?> row, List<Column> targetColumns, int rowIndex)
+			throws DatabaseLibraryException {
+		if (row.size() != targetColumns.size()) {
+			throw new DatabaseLibraryException(String.format(
+					"Row %d has different columns than the first row: %s", rowIndex + 1, row.keySet()));
+		}
+		Map<String, Object> byName = new LinkedHashMap<String, Object>();
+		for (Map.Entry<?, ?> entry : row.entrySet()) {
+			byName.put(String.valueOf(entry.getKey()).toUpperCase(), entry.getValue());
+		}
+		List<Object> values = new ArrayList<Object>();
+		for (Column column : targetColumns) {
+			String key = column.name.toUpperCase();
+			if (!byName.containsKey(key)) {
+				throw new DatabaseLibraryException(String.format(
+						"Row %d has different columns than the first row: %s", rowIndex + 1, row.keySet()));
+			}
+			values.add(byName.get(key));
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the columns of the table in table order, keyed by upper case
+	 * name. Table is looked up with {@link TableLookup}, and only the columns
+	 * of exactly that table are read.
+	 */
+	private Map<String, Column> readColumns() throws SQLException, DatabaseLibraryException {
+		String[] table = TableLookup.find(connection, tableName);
+		if (table == null) {
+			throw new DatabaseLibraryException("Table: " + tableName + " was not found");
+		}
+		DatabaseMetaData dbm = connection.getMetaData();
+		Map<String, Column> found = new LinkedHashMap<String, Column>();
+		ResultSet rs = dbm.getColumns(table[0], TableLookup.escape(dbm, table[1]), TableLookup.escape(dbm, table[2]),
+				null);
+		try {
+			while (rs.next()) {
+				if (!table[2].equals(rs.getString("TABLE_NAME"))
+						|| !StringUtils.equals(table[1], rs.getString("TABLE_SCHEM"))) {
+					continue;
+				}
+				String columnName = rs.getString("COLUMN_NAME");
+				found.put(columnName.toUpperCase(), new Column(columnName, rs.getInt("DATA_TYPE")));
+			}
+		} finally {
+			rs.close();
+		}
+		if (found.isEmpty()) {
+			throw new DatabaseLibraryException("Table: " + tableName + " was not found");
+		}
+		return found;
+	}
+
+	private static class Column {
+		final String name;
+		final int type;
+
+		Column(String name, int type) {
+			this.name = name;
+			this.type = type;
+		}
+	}
+}
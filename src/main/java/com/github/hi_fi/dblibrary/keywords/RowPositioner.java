@@ -0,0 +1,180 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads the row at a given position of a query, letting the database skip the
+ * rows before it instead of transferring them. How the row is positioned is
+ * resolved once per physical connection from the database product, and
+ * cached:
+ * <ul>
+ * <li>OFFSET ... FETCH, or LIMIT ... OFFSET, of the product</li>
+ * <li>ROW_NUMBER() window function, if the database rejects them</li>
+ * <li>{@link ResultSet#absolute(int)} of a scrollable result set, if neither
+ * is supported</li>
+ * </ul>
+ * Like in {@link RowCounter}, until a strategy has succeeded on the
+ * connection the next one is tried when a query fails, and a strategy is
+ * given up only when the next one succeeds. Once resolved, errors (e.g. in
+ * the table or column names) are thrown as such.
+ */
+class RowPositioner {
+
+	enum Strategy {
+		OFFSET_FETCH, ROW_NUMBER, ABSOLUTE
+	}
+
+	private static final Map<Connection, Strategy> strategies = Collections
+			.synchronizedMap(new WeakHashMap<Connection, Strategy>());
+
+	private final Connection connection;
+
+	RowPositioner(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Reads the row at the given position (starting from 1) of the columns of
+	 * the table, ordered by the given order (if any), and passes it to the
+	 * reader. Returns false if the query has less rows.
+	 */
+	boolean read(String columnNames, String tableName, String orderBy, long rowNum, RowReader reader)
+			throws SQLException, DatabaseLibraryException {
+		if (rowNum < 1) {
+			return false;
+		}
+		Strategy resolved = strategies.get(connection);
+		if (resolved != null) {
+			return read(resolved, execute(resolved, columnNames, tableName, orderBy, rowNum), rowNum, reader);
+		}
+		Strategy strategy = Strategy.OFFSET_FETCH;
+		SQLException firstError = null;
+		for (Strategy attempt = strategy;; attempt = Strategy.values()[attempt.ordinal() + 1]) {
+			// Failed statement aborts the whole transaction e.g. in PostgreSQL
+			Savepoint savepoint = attempt != Strategy.ABSOLUTE && !connection.getAutoCommit()
+					? connection.setSavepoint() : null;
+			Statement stmt;
+			try {
+				stmt = execute(attempt, columnNames, tableName, orderBy, rowNum);
+			} catch (SQLException e) {
+				if (savepoint != null) {
+					connection.rollback(savepoint);
+				}
+				if (firstError == null) {
+					firstError = e;
+				} else {
+					firstError.addSuppressed(e);
+				}
+				if (attempt == Strategy.ABSOLUTE) {
+					throw firstError;
+				}
+				continue;
+			} finally {
+				if (savepoint != null) {
+					releaseQuietly(savepoint);
+				}
+			}
+			if (attempt != strategy) {
+				System.out.println("Positioning rows with " + attempt + " instead of " + strategy);
+			}
+			strategies.put(connection, attempt);
+			return read(attempt, stmt, rowNum, reader);
+		}
+	}
+
+	private boolean read(Strategy strategy, Statement stmt, long rowNum, RowReader reader)
+			throws SQLException, DatabaseLibraryException {
+		try {
+			ResultSet rs = stmt.getResultSet();
+			boolean found = strategy == Strategy.ABSOLUTE ? moveTo(rs, rowNum) : rs.next();
+			if (found) {
+				reader.read(rs);
+			}
+			return found;
+		} finally {
+			Statements.release(stmt);
+		}
+	}
+
+	private Statement execute(Strategy strategy, String columnNames, String tableName, String orderBy, long rowNum)
+			throws SQLException {
+		if (strategy == Strategy.ABSOLUTE) {
+			return Statements.execute(connection, buildSelect(columnNames, tableName, orderBy),
+					ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY,
+					DatabaseConnection.getStatementOptions().withoutMaxRows());
+		}
+		return Statements.execute(connection,
+				buildPositionedSelect(strategy, columnNames, tableName, orderBy, rowNum));
+	}
+
+	static String buildSelect(String columnNames, String tableName, String orderBy) {
+		return "select " + columnNames + " from " + tableName
+				+ (StringUtils.isBlank(orderBy) ? "" : " order by " + orderBy);
+	}
+
+	/**
+	 * Returns the query selecting only the row at the given position, in the
+	 * syntax of the strategy and database product.
+	 */
+	String buildPositionedSelect(Strategy strategy, String columnNames, String tableName, String orderBy,
+			long rowNum) throws SQLException {
+		if (strategy == Strategy.ROW_NUMBER) {
+			// Constant 1 would be taken as a column position e.g. by SQL Server,
+			// which rejects it in window functions
+			String order = StringUtils.isBlank(orderBy) ? "(select null)" : orderBy;
+			return "select * from (select " + columnNames + ", row_number() over (order by " + order
+					+ ") as dblibrary_rownum from " + tableName + ") t where dblibrary_rownum = " + rowNum;
+		}
+		String product = connection.getMetaData().getDatabaseProductName().toLowerCase();
+		switch (RowCounter.getStrategy(product)) {
+		case LIMIT:
+			return buildSelect(columnNames, tableName, orderBy) + " limit 1 offset " + (rowNum - 1);
+		case TOP:
+			// OFFSET requires ORDER BY in SQL Server
+			return buildSelect(columnNames, tableName, StringUtils.isBlank(orderBy) ? "(select null)" : orderBy)
+					+ " offset " + (rowNum - 1) + " rows fetch next 1 rows only";
+		default:
+			return buildSelect(columnNames, tableName, orderBy) + " offset " + (rowNum - 1)
+					+ " rows fetch next 1 rows only";
+		}
+	}
+
+	/**
+	 * Moves to the row with absolute, or by reading the rows before it if the
+	 * driver gave a forward-only result set.
+	 */
+	private boolean moveTo(ResultSet rs, long rowNum) throws SQLException {
+		if (rs.getType() != ResultSet.TYPE_FORWARD_ONLY && rowNum <= Integer.MAX_VALUE) {
+			return rs.absolute((int) rowNum);
+		}
+		long count = 0;
+		while (count < rowNum && rs.next()) {
+			count++;
+		}
+		return count == rowNum;
+	}
+
+	private void releaseQuietly(Savepoint savepoint) {
+		try {
+			connection.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			// Not supported by all drivers, released with the transaction
+		}
+	}
+
+	/**
+	 * Reads the values of the positioned row.
+	 */
+	interface RowReader {
+		void read(ResultSet rs) throws SQLException, DatabaseLibraryException;
+	}
+}
@@ -0,0 +1,133 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statements of the SQL script files executed earlier, so that a script run
+ * repeatedly, e.g. in every test setup, is read and split into statements only
+ * once. Cached statements are used as long as the modification time and size
+ * of the file stay the same. Files larger than {@link #MAX_FILE_SIZE} are not
+ * cached, as they are meant to be streamed.
+ */
+class ScriptCache {
+
+	static final long MAX_FILE_SIZE = 10 * 1024 * 1024;
+
+	private static int maxSize = 16;
+
+	private static final Map<String, CachedScript> scripts = new LinkedHashMap<String, CachedScript>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedScript> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+
+	private ScriptCache() {
+	}
+
+	/**
+	 * Returns the cached statements of the file, or null if the file is not
+	 * cached or has changed since.
+	 */
+	static List<String> get(File file, String delimiter) throws IOException {
+		BasicFileAttributes attributes = readAttributes(file);
+		String key = getKey(file, delimiter);
+		synchronized (scripts) {
+			CachedScript script = scripts.get(key);
+			if (script != null && script.matches(attributes)) {
+				hitCount.incrementAndGet();
+				return script.statements;
+			}
+			missCount.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the current attributes of the file if its statements can be
+	 * cached, otherwise null.
+	 */
+	static BasicFileAttributes getCacheableAttributes(File file) throws IOException {
+		BasicFileAttributes attributes = readAttributes(file);
+		synchronized (scripts) {
+			return maxSize > 0 && attributes.size() <= MAX_FILE_SIZE ? attributes : null;
+		}
+	}
+
+	/**
+	 * Caches the statements of the file, if the file has not changed after
+	 * the given attributes were read.
+	 */
+	static void put(File file, String delimiter, BasicFileAttributes attributes, List<String> statements)
+			throws IOException {
+		CachedScript script = new CachedScript(attributes, Collections.unmodifiableList(statements));
+		if (!script.matches(readAttributes(file))) {
+			return;
+		}
+		String key = getKey(file, delimiter);
+		synchronized (scripts) {
+			if (maxSize > 0) {
+				scripts.put(key, script);
+			}
+		}
+	}
+
+	static void setMaxSize(int size) {
+		synchronized (scripts) {
+			maxSize = size;
+			while (scripts.size() > Math.max(size, 0)) {
+				scripts.remove(scripts.keySet().iterator().next());
+			}
+		}
+	}
+
+	static Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		synchronized (scripts) {
+			statistics.put("size", maxSize);
+			statistics.put("cached", scripts.size());
+		}
+		statistics.put("hits", hitCount.get());
+		statistics.put("misses", missCount.get());
+		return statistics;
+	}
+
+	private static String getKey(File file, String delimiter) throws IOException {
+		return file.getCanonicalPath() + "\n" + delimiter;
+	}
+
+	private static BasicFileAttributes readAttributes(File file) throws IOException {
+		return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+	}
+
+	private static class CachedScript {
+		final FileTime lastModified;
+		final long size;
+		final List<String> statements;
+
+		CachedScript(BasicFileAttributes attributes, List<String> statements) {
+			this.lastModified = attributes.lastModifiedTime();
+			this.size = attributes.size();
+			this.statements = statements;
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return lastModified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Executes the statements of a SQL script file in one transaction. Script is
+ * split into statements with {@link SqlTokenizer} while it's read, or taken
+ * from the {@link ScriptCache} if the file has been read before. When batch
+ * size is more than one, consecutive DML statements are sent to the database
+ * in JDBC batches instead of one round trip per statement.
+ */
+class SqlScriptExecutor {
+
+	private static final Pattern DML = Pattern.compile("^(\\s*/\\*.*?\\*/)*\\s*(insert|update|delete|merge)\\b",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private final Connection connection;
+	private final int batchSize;
+	private final boolean ignoreErrors;
+	private final String delimiter;
+	private final StatementOptions options;
+	private final List<String> batch = new ArrayList<String>();
+	private volatile boolean cancelled = false;
+	private boolean ownTransaction;
+	private Savepoint savepoint;
+
+	SqlScriptExecutor(Connection connection, int batchSize, boolean ignoreErrors, String delimiter) {
+		this(connection, batchSize, ignoreErrors, delimiter, DatabaseConnection.getStatementOptions());
+	}
+
+	/**
+	 * Executor with the statement options of the alias of the connection, for
+	 * use outside the thread of the keyword.
+	 */
+	SqlScriptExecutor(Connection connection, int batchSize, boolean ignoreErrors, String delimiter,
+			StatementOptions options) {
+		this.connection = connection;
+		this.batchSize = batchSize;
+		this.ignoreErrors = ignoreErrors;
+		this.delimiter = delimiter;
+		this.options = options.withoutMaxRows();
+	}
+
+	/**
+	 * Executes all statements of the file and commits them. If a statement
+	 * fails and errors are not ignored, everything is rolled back. If a
+	 * transaction is already open on the connection, the statements join it
+	 * and are not committed, and on failure only they are rolled back.
+	 */
+	void executeFile(String fileName) throws SQLException, IOException, DatabaseLibraryException {
+		File file = new File(fileName);
+		List<String> statements = ScriptCache.get(file, delimiter);
+		begin();
+		boolean committed = false;
+		try {
+			if (statements != null) {
+				executeAll(statements);
+			} else {
+				executeAndCache(file);
+			}
+			commit();
+			committed = true;
+		} finally {
+			end(committed);
+		}
+	}
+
+	/**
+	 * Executes the given statements in one transaction, like
+	 * {@link #executeFile(String)}.
+	 */
+	void executeStatements(List<String> statements) throws SQLException, DatabaseLibraryException {
+		begin();
+		boolean committed = false;
+		try {
+			executeAll(statements);
+			commit();
+			committed = true;
+		} finally {
+			end(committed);
+		}
+	}
+
+	/**
+	 * Makes the execution fail before its next statement. Can be called from
+	 * another thread.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	private void executeAll(List<String> statements) throws SQLException, DatabaseLibraryException {
+		for (String sql : statements) {
+			execute(sql);
+		}
+	}
+
+	private void begin() throws SQLException {
+		ownTransaction = connection.getAutoCommit();
+		if (ownTransaction) {
+			connection.setAutoCommit(false);
+		} else {
+			savepoint = connection.setSavepoint();
+		}
+	}
+
+	private void commit() throws SQLException, DatabaseLibraryException {
+		flush();
+		if (ownTransaction) {
+			connection.commit();
+		}
+	}
+
+	private void end(boolean committed) throws SQLException {
+		if (ownTransaction) {
+			if (!committed) {
+				connection.rollback();
+			}
+			connection.setAutoCommit(true);
+		} else if (!committed) {
+			connection.rollback(savepoint);
+		}
+	}
+
+	/**
+	 * Executes the statements while reading them from the file, and caches
+	 * them if the file is small enough.
+	 */
+	private void executeAndCache(File file) throws SQLException, IOException, DatabaseLibraryException {
+		BasicFileAttributes attributes = ScriptCache.getCacheableAttributes(file);
+		List<String> statements = attributes != null ? new ArrayList<String>() : null;
+		Reader reader = new FileReader(file);
+		try {
+			SqlTokenizer tokenizer = new SqlTokenizer(reader, delimiter);
+			String sql;
+			while ((sql = tokenizer.next()) != null) {
+				if (statements != null) {
+					statements.add(sql);
+				}
+				execute(sql);
+			}
+		} finally {
+			reader.close();
+		}
+		if (statements != null) {
+			ScriptCache.put(file, delimiter, attributes, statements);
+		}
+	}
+
+	private void execute(String sql) throws SQLException, DatabaseLibraryException {
+		if (cancelled) {
+			throw new DatabaseLibraryException("Execution cancelled before: " + sql);
+		}
+		if (batchSize > 1 && DML.matcher(sql).find()) {
+			batch.add(sql);
+			if (batch.size() >= batchSize) {
+				flush();
+			}
+			return;
+		}
+		flush();
+		System.out.println("Executing: " + sql);
+		executeSingle(sql);
+	}
+
+	private void executeSingle(String sql) throws SQLException, DatabaseLibraryException {
+		try {
+			Statements.release(Statements.execute(connection, sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY, options));
+		} catch (SQLException e) {
+			fail(sql, e);
+		}
+	}
+
+	private void flush() throws SQLException, DatabaseLibraryException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<String> statements = new ArrayList<String>(batch);
+		batch.clear();
+		System.out.println(String.format("Executing batch of %d statements starting with: %s", statements.size(),
+				statements.get(0)));
+		Statement stmt = connection.createStatement();
+		try {
+			options.applyTo(stmt);
+			for (String sql : statements) {
+				stmt.addBatch(sql);
+			}
+			Statements.executeBatchWithTimeout(stmt, options.getQueryTimeout());
+		} catch (BatchUpdateException e) {
+			int[] updateCounts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+			if (updateCounts.length < statements.size()) {
+				// Driver stopped at the failed statement, rest of the batch
+				// was not executed
+				int failed = updateCounts.length;
+				fail(describe(statements, failed), e);
+				for (String sql : statements.subList(failed + 1, statements.size())) {
+					executeSingle(sql);
+				}
+			} else {
+				for (int i = 0; i < updateCounts.length; i++) {
+					if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+						fail(describe(statements, i), e);
+					}
+				}
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private String describe(List<String> statements, int index) {
+		return String.format("%s (statement %d of batch of %d)", statements.get(index), index + 1,
+				statements.size());
+	}
+
+	private void fail(String sql, SQLException e) throws DatabaseLibraryException {
+		if (ignoreErrors) {
+			System.out.println("Error executing: " + sql + "\n" + e.getMessage() + "\n\n");
+		} else {
+			throw new DatabaseLibraryException(
+					"Error executing: " + sql + "\n" + e.getMessage() + "\nExecution from file rolled back!");
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a SQL script into statements while reading it, so that only the
+ * statement being read is kept in memory. Delimiters inside string literals,
+ * quoted identifiers, dollar-quoted bodies and comments are not treated as
+ * delimiters.
+ * <p>
+ * A delimiter consisting of letters only, or "/", must be alone on its line
+ * (e.g. "GO" of SQL Server and "/" of Oracle SQL*Plus). Other delimiters end a
+ * statement wherever they are found. The delimiter can also be changed within
+ * the script with a MySQL style "DELIMITER //" line.
+ * <p>
+ * Lines starting with "--", "#" or "REM" are comments, and so is the rest of
+ * the line after "--". These are left out of the statements. Block comments
+ * are kept, as they can contain optimizer hints.
+ * <p>
+ * Comment lines "-- @section name" and "-- @sequential" mark the following
+ * statements as part of the named section, or not part of any section.
+ * Section of each statement is available with {@link #getSection()}.
+ */
+class SqlTokenizer {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_LOOKAHEAD = 1024;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private boolean endOfInput = false;
+
+	private String delimiter;
+	private boolean lineDelimiter;
+	private String section;
+	private String statementSection;
+
+	SqlTokenizer(Reader reader, String delimiter) {
+		this.reader = reader;
+		setDelimiter(delimiter);
+	}
+
+	/**
+	 * Returns the next statement without its delimiter, or null when the
+	 * script has ended. Statement after the last delimiter is returned too.
+	 */
+	String next() throws IOException {
+		StringBuilder statement = new StringBuilder();
+		boolean hasContent = false;
+		boolean atLineStart = true;
+		int previous = '\n';
+		statementSection = section;
+
+		int c;
+		while ((c = peek(0)) != -1) {
+			if (c == '\n') {
+				consume(statement, 1);
+				atLineStart = true;
+				previous = c;
+				continue;
+			}
+			if (atLineStart && Character.isWhitespace(c)) {
+				consume(statement, 1);
+				continue;
+			}
+			if (atLineStart) {
+				atLineStart = false;
+				if (lineDelimiter && matchesLine(delimiter)) {
+					skipLine();
+					if (hasContent) {
+						return statement.toString().trim();
+					}
+					statement.setLength(0);
+					atLineStart = true;
+					continue;
+				}
+				if (c == '-' && peek(1) == '-' && readSectionMarker()) {
+					if (!hasContent) {
+						statementSection = section;
+					}
+					atLineStart = true;
+					continue;
+				}
+				if (c == '#' || matchesWord("rem") || matchesWord("remark")) {
+					skipLine();
+					atLineStart = true;
+					continue;
+				}
+				if (!hasContent && matchesWord("delimiter")) {
+					setDelimiter(readLine().trim().substring("delimiter".length()).trim());
+					statement.setLength(0);
+					atLineStart = true;
+					continue;
+				}
+			}
+			if (!lineDelimiter && matches(delimiter)) {
+				skip(delimiter.length());
+				if (hasContent) {
+					return statement.toString().trim();
+				}
+				statement.setLength(0);
+				previous = ' ';
+				continue;
+			}
+			if (c == '-' && peek(1) == '-') {
+				skipLineComment();
+				continue;
+			}
+			if (c == '/' && peek(1) == '*') {
+				consume(statement, 2);
+				consumeUntil(statement, "*/");
+				previous = ' ';
+				continue;
+			}
+			if (c == '\'' || c == '"' || c == '`') {
+				// PostgreSQL E'...' strings can contain backslash escaped quotes
+				int beforePrevious = statement.length() > 1 ? statement.charAt(statement.length() - 2) : ' ';
+				boolean backslashEscapes = c == '\'' && (previous == 'E' || previous == 'e')
+						&& !isIdentifierPart(beforePrevious);
+				consume(statement, 1);
+				consumeQuoted(statement, (char) c, backslashEscapes);
+				hasContent = true;
+				previous = c;
+				continue;
+			}
+			if (c == '$' && !isIdentifierPart(previous)) {
+				String tag = readDollarTag();
+				if (tag != null) {
+					consume(statement, tag.length());
+					consumeUntil(statement, tag);
+					hasContent = true;
+					previous = '$';
+					continue;
+				}
+			}
+			consume(statement, 1);
+			if (!Character.isWhitespace(c)) {
+				hasContent = true;
+			}
+			previous = c;
+		}
+		return hasContent ? statement.toString().trim() : null;
+	}
+
+	/**
+	 * Returns the section of the statement returned last by {@link #next()},
+	 * or null if it's not in a section.
+	 */
+	String getSection() {
+		return statementSection;
+	}
+
+	/**
+	 * Reads the section marker line starting at current position, if there
+	 * is one.
+	 */
+	private boolean readSectionMarker() throws IOException {
+		int offset = 2;
+		while (peek(offset) == ' ' || peek(offset) == '\t') {
+			offset++;
+		}
+		if (matchesWord("@sequential", offset)) {
+			readLine();
+			section = null;
+			return true;
+		}
+		if (matchesWord("@section", offset)) {
+			String name = readLine().trim().substring(offset + "@section".length()).trim();
+			if (name.isEmpty()) {
+				throw new IllegalArgumentException("Section marker is missing the section name");
+			}
+			section = name;
+			return true;
+		}
+		return false;
+	}
+
+	private void setDelimiter(String delimiter) {
+		if (delimiter == null || delimiter.isEmpty()) {
+			throw new IllegalArgumentException("Statement delimiter must not be empty");
+		}
+		this.delimiter = delimiter;
+		this.lineDelimiter = delimiter.equals("/") || delimiter.matches("[A-Za-z]+");
+	}
+
+	private void consumeQuoted(StringBuilder statement, char quote, boolean backslashEscapes) throws IOException {
+		int c;
+		while ((c = peek(0)) != -1) {
+			if (backslashEscapes && c == '\\') {
+				consume(statement, peek(1) == -1 ? 1 : 2);
+				continue;
+			}
+			consume(statement, 1);
+			if (c == quote) {
+				return;
+			}
+		}
+	}
+
+	private void consumeUntil(StringBuilder statement, String end) throws IOException {
+		while (peek(0) != -1) {
+			if (matches(end)) {
+				consume(statement, end.length());
+				return;
+			}
+			consume(statement, 1);
+		}
+	}
+
+	/**
+	 * Returns the dollar quote tag ($$ or $tag$) starting at current position,
+	 * or null if there isn't one.
+	 */
+	private String readDollarTag() throws IOException {
+		for (int i = 1; i < MAX_LOOKAHEAD; i++) {
+			int c = peek(i);
+			if (c == '$') {
+				StringBuilder tag = new StringBuilder(i + 1);
+				for (int j = 0; j <= i; j++) {
+					tag.append((char) peek(j));
+				}
+				return tag.toString();
+			}
+			if (c == -1 || !(Character.isLetter(c) || c == '_' || (i > 1 && Character.isDigit(c)))) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private void skipLineComment() throws IOException {
+		int c;
+		while ((c = peek(0)) != -1 && c != '\n') {
+			skip(1);
+		}
+	}
+
+	private void skipLine() throws IOException {
+		skipLineComment();
+		if (peek(0) == '\n') {
+			skip(1);
+		}
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = peek(0)) != -1 && c != '\n') {
+			consume(line, 1);
+		}
+		if (c == '\n') {
+			skip(1);
+		}
+		return line.toString();
+	}
+
+	private boolean matches(String text) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			if (peek(i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matchesIgnoreCase(String text) throws IOException {
+		return matchesIgnoreCase(text, 0);
+	}
+
+	private boolean matchesIgnoreCase(String text, int offset) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			int c = peek(offset + i);
+			if (c == -1 || Character.toLowerCase((char) c) != Character.toLowerCase(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matchesWord(String word) throws IOException {
+		return matchesWord(word, 0);
+	}
+
+	private boolean matchesWord(String word, int offset) throws IOException {
+		if (!matchesIgnoreCase(word, offset)) {
+			return false;
+		}
+		int next = peek(offset + word.length());
+		return next == -1 || Character.isWhitespace(next);
+	}
+
+	/**
+	 * Checks if the current line contains only the given text (and
+	 * whitespace).
+	 */
+	private boolean matchesLine(String text) throws IOException {
+		if (!matchesIgnoreCase(text)) {
+			return false;
+		}
+		for (int i = text.length(); i < MAX_LOOKAHEAD; i++) {
+			int c = peek(i);
+			if (c == -1 || c == '\n') {
+				return true;
+			}
+			if (!Character.isWhitespace(c)) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isIdentifierPart(int c) {
+		return c != -1 && (Character.isLetterOrDigit(c) || c == '_' || c == '$');
+	}
+
+	private void consume(StringBuilder target, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			int c = peek(0);
+			if (c == -1) {
+				return;
+			}
+			target.append((char) c);
+			skip(1);
+		}
+	}
+
+	private void skip(int count) throws IOException {
+		for (int i = 0; i < count && peek(0) != -1; i++) {
+			position++;
+		}
+	}
+
+	/**
+	 * Returns the character at given offset from the current position without
+	 * consuming it, or -1 at the end of the input.
+	 */
+	private int peek(int offset) throws IOException {
+		while (position + offset >= limit) {
+			if (endOfInput) {
+				return -1;
+			}
+			fill();
+		}
+		return buffer[position + offset];
+	}
+
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		int read = reader.read(buffer, limit, buffer.length - limit);
+		if (read == -1) {
+			endOfInput = true;
+		} else {
+			limit += read;
+		}
+	}
+}
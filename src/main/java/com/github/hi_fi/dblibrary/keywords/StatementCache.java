@@ -0,0 +1,186 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of prepared statements, one cache per physical connection, keyed
+ * by the SQL text. Statements are checked out from the cache while they are
+ * used, so a statement is never shared by two threads at the same time.
+ * Cache is disabled when its size is zero, which is the default.
+ */
+class StatementCache {
+
+	private static volatile int maxSize = 0;
+
+	private static final Map<Connection, StatementCache> caches = Collections
+			.synchronizedMap(new WeakHashMap<Connection, StatementCache>());
+
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+	private static final AtomicLong evictionCount = new AtomicLong();
+
+	private final Map<String, PreparedStatement> idleStatements = new LinkedHashMap<String, PreparedStatement>(16,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+			if (size() > maxSize) {
+				closeQuietly(eldest.getValue());
+				evictionCount.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private final Map<PreparedStatement, String> checkedOutStatements = new IdentityHashMap<PreparedStatement, String>();
+
+	static boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+		return prepare(connection, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	static PreparedStatement prepare(Connection connection, String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		if (maxSize <= 0) {
+			return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		}
+		StatementCache cache;
+		synchronized (caches) {
+			cache = caches.get(connection);
+			if (cache == null) {
+				cache = new StatementCache();
+				caches.put(connection, cache);
+			}
+		}
+		return cache.checkOut(connection, sql, resultSetType, resultSetConcurrency);
+	}
+
+	/**
+	 * Returns the statement to the cache of its connection, or closes it if it
+	 * is not cached.
+	 */
+	static void release(Statement stmt) throws SQLException {
+		StatementCache cache = null;
+		if (stmt instanceof PreparedStatement && !stmt.isClosed()) {
+			cache = caches.get(stmt.getConnection());
+		}
+		if (cache == null || !cache.checkIn((PreparedStatement) stmt)) {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Closes the cached statements of the connection and forgets its cache.
+	 * Must be called when a connection is closed or thrown away, as the
+	 * cached statements reference their connection, which would keep it in
+	 * the cache for good.
+	 */
+	static void remove(Connection connection) {
+		StatementCache cache = caches.remove(connection);
+		if (cache != null) {
+			cache.closeAll();
+		}
+	}
+
+	static void setMaxSize(int size) {
+		maxSize = size;
+		List<StatementCache> current;
+		synchronized (caches) {
+			current = new ArrayList<StatementCache>(caches.values());
+		}
+		for (StatementCache cache : current) {
+			cache.trim();
+		}
+	}
+
+	static Map<String, Object> getStatistics() {
+		int cached = 0;
+		synchronized (caches) {
+			for (StatementCache cache : caches.values()) {
+				cached += cache.size();
+			}
+		}
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("size", maxSize);
+		statistics.put("cached", cached);
+		statistics.put("hits", hitCount.get());
+		statistics.put("misses", missCount.get());
+		statistics.put("evictions", evictionCount.get());
+		return statistics;
+	}
+
+	private synchronized PreparedStatement checkOut(Connection connection, String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		String key = resultSetType + ":" + resultSetConcurrency + ":" + sql;
+		PreparedStatement stmt = idleStatements.remove(key);
+		if (stmt != null && !stmt.isClosed()) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+			stmt = connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		}
+		checkedOutStatements.put(stmt, key);
+		return stmt;
+	}
+
+	private synchronized boolean checkIn(PreparedStatement stmt) throws SQLException {
+		String key = checkedOutStatements.remove(stmt);
+		if (key == null || maxSize <= 0) {
+			return false;
+		}
+		stmt.clearParameters();
+		PreparedStatement previous = idleStatements.put(key, stmt);
+		if (previous != null && previous != stmt) {
+			// Same SQL was prepared again while this one was in use
+			closeQuietly(previous);
+		}
+		return true;
+	}
+
+	private synchronized void trim() {
+		while (idleStatements.size() > Math.max(maxSize, 0)) {
+			Map.Entry<String, PreparedStatement> eldest = idleStatements.entrySet().iterator().next();
+			closeQuietly(eldest.getValue());
+			idleStatements.remove(eldest.getKey());
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private synchronized void closeAll() {
+		for (PreparedStatement stmt : idleStatements.values()) {
+			closeQuietly(stmt);
+		}
+		idleStatements.clear();
+		// Statements in use are closed when they are released
+		checkedOutStatements.clear();
+	}
+
+	private synchronized int size() {
+		return idleStatements.size();
+	}
+
+	private static void closeQuietly(Statement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			// Statement is not used anymore
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Fetch size, maximum number of rows and query timeout (in seconds) set to
+ * the statements executed by the keywords. Zero means the driver's default
+ * fetch size, and no limit for rows and time.
+ */
+class StatementOptions {
+
+	static final StatementOptions DEFAULT = new StatementOptions(0, 0, 0);
+
+	// Fetch size of the driver, as 0 doesn't mean the default for all drivers
+	private static final Map<Statement, Integer> defaultFetchSizes = Collections
+			.synchronizedMap(new WeakHashMap<Statement, Integer>());
+
+	private final int fetchSize;
+	private final int maxRows;
+	private final int queryTimeout;
+
+	StatementOptions(int fetchSize, int maxRows, int queryTimeout) {
+		if (fetchSize < 0 || maxRows < 0 || queryTimeout < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Fetch size (%d), max rows (%d) and query timeout (%d) must not be negative", fetchSize, maxRows,
+					queryTimeout));
+		}
+		this.fetchSize = fetchSize;
+		this.maxRows = maxRows;
+		this.queryTimeout = queryTimeout;
+	}
+
+	int getFetchSize() {
+		return fetchSize;
+	}
+
+	int getMaxRows() {
+		return maxRows;
+	}
+
+	int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/**
+	 * Returns options with the given values replaced. Empty values keep the
+	 * current ones.
+	 */
+	StatementOptions override(String fetchSize, String maxRows, String queryTimeout) {
+		return new StatementOptions(StringUtils.isEmpty(fetchSize) ? this.fetchSize : Integer.valueOf(fetchSize),
+				StringUtils.isEmpty(maxRows) ? this.maxRows : Integer.valueOf(maxRows),
+				StringUtils.isEmpty(queryTimeout) ? this.queryTimeout : Integer.valueOf(queryTimeout));
+	}
+
+	StatementOptions withoutMaxRows() {
+		return maxRows == 0 ? this : new StatementOptions(fetchSize, 0, queryTimeout);
+	}
+
+	/**
+	 * Sets the options to the statement. Values are set only when they differ
+	 * from the statement's current ones, so statements with default options
+	 * are left untouched and cached statements don't keep the options of
+	 * their previous use. Fetch size of the driver is recorded on the first
+	 * use, and restored when no fetch size is given.
+	 */
+	void applyTo(Statement stmt) throws SQLException {
+		Integer defaultFetchSize = defaultFetchSizes.get(stmt);
+		if (defaultFetchSize == null) {
+			defaultFetchSize = stmt.getFetchSize();
+			defaultFetchSizes.put(stmt, defaultFetchSize);
+		}
+		int wantedFetchSize = fetchSize > 0 ? fetchSize : defaultFetchSize;
+		if (stmt.getFetchSize() != wantedFetchSize) {
+			stmt.setFetchSize(wantedFetchSize);
+		}
+		if (stmt.getMaxRows() != maxRows) {
+			stmt.setMaxRows(maxRows);
+		}
+		if (stmt.getQueryTimeout() != queryTimeout) {
+			stmt.setQueryTimeout(queryTimeout);
+		}
+	}
+}
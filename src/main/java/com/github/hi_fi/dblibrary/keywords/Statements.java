@@ -0,0 +1,334 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Helpers for executing SQL from the keywords. SQL with parameters, and the
+ * queries the library repeats for assertions, are prepared and taken from the
+ * {@link StatementCache} when it's enabled. Other SQL is executed with plain
+ * statements. Statement given by these methods must always be given back with
+ * {@link #release(Statement)}, which also closes its result set.
+ */
+class Statements {
+
+	private static final ScheduledExecutorService timeoutScheduler = Executors
+			.newSingleThreadScheduledExecutor(new DaemonThreadFactory("dblibrary-query-timeout"));
+
+	private Statements() {
+	}
+
+	static Statement execute(Connection connection, String sql) throws SQLException {
+		return execute(connection, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	static Statement execute(Connection connection, String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return execute(connection, sql, resultSetType, resultSetConcurrency, getDefaultOptions());
+	}
+
+	static Statement execute(Connection connection, String sql, int resultSetType, int resultSetConcurrency,
+			StatementOptions options) throws SQLException {
+		Statement stmt = connection.createStatement(resultSetType, resultSetConcurrency);
+		try {
+			options.applyTo(stmt);
+			executeWithTimeout(stmt, sql, options.getQueryTimeout());
+		} catch (SQLException e) {
+			release(stmt);
+			throw e;
+		}
+		return stmt;
+	}
+
+	static Statement execute(Connection connection, String sql, List<?> parameters) throws SQLException {
+		return execute(connection, sql, parameters, getDefaultOptions());
+	}
+
+	/**
+	 * Executes SQL containing ? placeholders with the given parameters bound to
+	 * them. Statement is always prepared, and cached if the cache is enabled.
+	 * Without parameters (null) this is the same as
+	 * {@link #execute(Connection, String)}.
+	 */
+	static Statement execute(Connection connection, String sql, List<?> parameters, StatementOptions options)
+			throws SQLException {
+		if (parameters == null) {
+			return execute(connection, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, options);
+		}
+		return executePrepared(connection, sql, parameters, options);
+	}
+
+	/**
+	 * Executes a query the library builds and repeats with the same SQL, like
+	 * the row counts of assertions. Query is prepared and cached when the
+	 * cache is enabled, even without parameters, so that the database can
+	 * reuse its plan. Other SQL without parameters isn't prepared, so that
+	 * one-off statements don't push these out of the cache, and ? in them
+	 * (e.g. PostgreSQL JSON operators) is never taken as a placeholder.
+	 */
+	static Statement executeRepeated(Connection connection, String sql, List<?> parameters, StatementOptions options)
+			throws SQLException {
+		if (parameters == null && !StatementCache.isEnabled()) {
+			return execute(connection, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, options);
+		}
+		return executePrepared(connection, sql, parameters, options);
+	}
+
+	static Statement executeRepeated(Connection connection, String sql, List<?> parameters) throws SQLException {
+		return executeRepeated(connection, sql, parameters, getDefaultOptions());
+	}
+
+	private static Statement executePrepared(Connection connection, String sql, List<?> parameters,
+			StatementOptions options) throws SQLException {
+		PreparedStatement stmt = StatementCache.prepare(connection, sql);
+		try {
+			options.applyTo(stmt);
+			bind(stmt, parameters);
+			executeWithTimeout(stmt, null, options.getQueryTimeout());
+		} catch (SQLException e) {
+			release(stmt);
+			throw e;
+		}
+		return stmt;
+	}
+
+	/**
+	 * Executes the statement (prepared one if SQL is null). If the statement
+	 * is still running when the query timeout has passed, it's cancelled, as
+	 * not all drivers enforce the timeout themselves.
+	 */
+	static boolean executeWithTimeout(final Statement stmt, final String sql, int queryTimeout) throws SQLException {
+		return withTimeout(stmt, queryTimeout, new Execution<Boolean>() {
+			@Override
+			public Boolean run() throws SQLException {
+				return sql == null ? ((PreparedStatement) stmt).execute() : stmt.execute(sql);
+			}
+		});
+	}
+
+	/**
+	 * Executes the batch of the statement, cancelling it like
+	 * {@link #executeWithTimeout(Statement, String, int)} when the query
+	 * timeout has passed.
+	 */
+	static int[] executeBatchWithTimeout(final Statement stmt, int queryTimeout) throws SQLException {
+		return withTimeout(stmt, queryTimeout, new Execution<int[]>() {
+			@Override
+			public int[] run() throws SQLException {
+				return stmt.executeBatch();
+			}
+		});
+	}
+
+	private interface Execution<T> {
+		T run() throws SQLException;
+	}
+
+	private static <T> T withTimeout(final Statement stmt, int queryTimeout, Execution<T> execution)
+			throws SQLException {
+		if (queryTimeout <= 0) {
+			return execution.run();
+		}
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		final AtomicBoolean cancelled = new AtomicBoolean(false);
+		ScheduledFuture<?> canceller = timeoutScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (finished) {
+					if (finished.get()) {
+						return;
+					}
+					cancelled.set(true);
+					try {
+						stmt.cancel();
+					} catch (SQLException e) {
+						System.out.println("Could not cancel statement after timeout: " + e.getMessage());
+					}
+				}
+			}
+		}, queryTimeout, TimeUnit.SECONDS);
+		try {
+			return execution.run();
+		} catch (SQLException e) {
+			if (cancelled.get() && !(e instanceof SQLTimeoutException)) {
+				throw new SQLTimeoutException(
+						String.format("Statement cancelled after query timeout of %d seconds", queryTimeout), e);
+			}
+			throw e;
+		} finally {
+			synchronized (finished) {
+				finished.set(true);
+			}
+			canceller.cancel(false);
+		}
+	}
+
+	/**
+	 * Options of the active alias without the maximum number of rows, as
+	 * limiting rows would make checks on them unreliable. Keywords returning
+	 * rows give the full options explicitly.
+	 */
+	private static StatementOptions getDefaultOptions() {
+		return DatabaseConnection.getStatementOptions().withoutMaxRows();
+	}
+
+	static void bind(PreparedStatement stmt, List<?> parameters) throws SQLException {
+		if (parameters == null) {
+			return;
+		}
+		for (int i = 0; i < parameters.size(); i++) {
+			bind(stmt, i + 1, parameters.get(i));
+		}
+	}
+
+	static void bind(PreparedStatement stmt, int index, Object value) throws SQLException {
+		if (value == null) {
+			stmt.setNull(index, getParameterType(stmt, index));
+		} else if (value instanceof String) {
+			stmt.setString(index, (String) value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			stmt.setInt(index, ((Number) value).intValue());
+		} else if (value instanceof Long) {
+			stmt.setLong(index, (Long) value);
+		} else if (value instanceof BigInteger) {
+			stmt.setBigDecimal(index, new BigDecimal((BigInteger) value));
+		} else if (value instanceof BigDecimal) {
+			stmt.setBigDecimal(index, (BigDecimal) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			stmt.setDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			stmt.setBoolean(index, (Boolean) value);
+		} else if (value instanceof java.sql.Date) {
+			stmt.setDate(index, (java.sql.Date) value);
+		} else if (value instanceof Timestamp) {
+			stmt.setTimestamp(index, (Timestamp) value);
+		} else if (value instanceof java.sql.Time) {
+			stmt.setTime(index, (java.sql.Time) value);
+		} else if (value instanceof Date) {
+			stmt.setTimestamp(index, new Timestamp(((Date) value).getTime()));
+		} else if (value instanceof byte[]) {
+			stmt.setBytes(index, (byte[]) value);
+		} else {
+			stmt.setObject(index, value);
+		}
+	}
+
+	/**
+	 * Returns the SQL type of the parameter for binding null to it, as e.g.
+	 * Oracle and DB2 reject nulls bound as {@link Types#NULL}. When the driver
+	 * doesn't describe its parameters, null is bound as VARCHAR, which the
+	 * databases convert to any column type.
+	 */
+	private static int getParameterType(PreparedStatement stmt, int index) {
+		try {
+			ParameterMetaData metaData = stmt.getParameterMetaData();
+			if (metaData != null) {
+				int type = metaData.getParameterType(index);
+				if (type != Types.NULL && type != Types.OTHER) {
+					return type;
+				}
+			}
+		} catch (SQLException e) {
+			// Parameter metadata is not supported by the driver
+		}
+		return Types.VARCHAR;
+	}
+
+	/**
+	 * Reads at most given amount of rows from the result set, each row as a
+	 * map of column name to value.
+	 */
+	static List<LinkedHashMap<String, Object>> readRows(ResultSet rs, int maxRows) throws SQLException {
+		List<LinkedHashMap<String, Object>> rows = new ArrayList<LinkedHashMap<String, Object>>();
+		String[] columns = getColumnNames(rs);
+		while (rows.size() < maxRows && rs.next()) {
+			LinkedHashMap<String, Object> row = new LinkedHashMap<String, Object>(columns.length * 2);
+			for (int i = 0; i < columns.length; ++i) {
+				row.put(columns[i], rs.getObject(i + 1));
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads all rows from the result set as lists of values, in the order of
+	 * the column names which are returned with key "columns". Rows are
+	 * returned with key "rows".
+	 */
+	static Map<String, List<?>> readTable(ResultSet rs) throws SQLException {
+		String[] columns = getColumnNames(rs);
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		while (rs.next()) {
+			Object[] values = new Object[columns.length];
+			for (int i = 0; i < columns.length; ++i) {
+				values[i] = rs.getObject(i + 1);
+			}
+			rows.add(Arrays.asList(values));
+		}
+		Map<String, List<?>> table = new LinkedHashMap<String, List<?>>();
+		table.put("columns", Arrays.asList(columns));
+		table.put("rows", rows);
+		return table;
+	}
+
+	/**
+	 * Reads all rows from the result set into a list of values per column.
+	 */
+	static LinkedHashMap<String, List<Object>> readColumns(ResultSet rs) throws SQLException {
+		String[] columns = getColumnNames(rs);
+		List<List<Object>> values = new ArrayList<List<Object>>(columns.length);
+		LinkedHashMap<String, List<Object>> table = new LinkedHashMap<String, List<Object>>(columns.length * 2);
+		for (String column : columns) {
+			List<Object> columnValues = new ArrayList<Object>();
+			values.add(columnValues);
+			table.put(column, columnValues);
+		}
+		while (rs.next()) {
+			for (int i = 0; i < columns.length; ++i) {
+				values.get(i).add(rs.getObject(i + 1));
+			}
+		}
+		return table;
+	}
+
+	private static String[] getColumnNames(ResultSet rs) throws SQLException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		String[] columns = new String[rsmd.getColumnCount()];
+		for (int i = 0; i < columns.length; ++i) {
+			columns[i] = rsmd.getColumnName(i + 1);
+		}
+		return columns;
+	}
+
+	static void release(Statement stmt) throws SQLException {
+		if (stmt instanceof PreparedStatement && !stmt.isClosed()) {
+			ResultSet rs = stmt.getResultSet();
+			if (rs != null) {
+				rs.close();
+			}
+		}
+		StatementCache.release(stmt);
+	}
+}
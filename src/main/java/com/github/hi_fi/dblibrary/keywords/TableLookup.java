@@ -0,0 +1,84 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Finds tables from {@link DatabaseMetaData} by name. Metadata methods take
+ * names as LIKE patterns, so _ and % in the names are escaped, and only
+ * tables with exactly the given name are accepted. Name is tried as given,
+ * and in upper and lower case, as databases store unquoted names differently.
+ * If the name matches tables in several schemas, the one in the current schema
+ * of the connection is preferred.
+ */
+class TableLookup {
+
+	private TableLookup() {
+	}
+
+	/**
+	 * Returns the catalog, schema and name of the table as stored in the
+	 * database, or null if the table is not found.
+	 */
+	static String[] find(Connection connection, String tableName) throws SQLException {
+		String schema = null;
+		String table = tableName;
+		int dot = tableName.lastIndexOf('.');
+		if (dot >= 0) {
+			schema = tableName.substring(0, dot);
+			table = tableName.substring(dot + 1);
+		}
+		DatabaseMetaData dbm = connection.getMetaData();
+		String currentSchema = getCurrentSchema(connection);
+		for (String[] name : new String[][] { { schema, table },
+				{ schema == null ? null : schema.toUpperCase(), table.toUpperCase() },
+				{ schema == null ? null : schema.toLowerCase(), table.toLowerCase() } }) {
+			String[] found = null;
+			ResultSet rs = dbm.getTables(null, escape(dbm, name[0]), escape(dbm, name[1]), null);
+			try {
+				while (rs.next()) {
+					String foundSchema = rs.getString("TABLE_SCHEM");
+					if (!rs.getString("TABLE_NAME").equals(name[1])
+							|| (name[0] != null && !name[0].equals(foundSchema))) {
+						continue;
+					}
+					if (found == null || StringUtils.equals(foundSchema, currentSchema)) {
+						found = new String[] { rs.getString("TABLE_CAT"), foundSchema, name[1] };
+					}
+				}
+			} finally {
+				rs.close();
+			}
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Escapes the LIKE wildcards of the name, so that it matches only itself.
+	 */
+	static String escape(DatabaseMetaData dbm, String name) throws SQLException {
+		String escape = dbm.getSearchStringEscape();
+		if (name == null || StringUtils.isEmpty(escape)) {
+			return name;
+		}
+		return name.replace(escape, escape + escape).replace("_", escape + "_").replace("%", escape + "%");
+	}
+
+	private static String getCurrentSchema(Connection connection) {
+		try {
+			return connection.getSchema();
+		} catch (SQLException e) {
+			return null;
+		} catch (AbstractMethodError e) {
+			// Driver older than JDBC 4.1
+			return null;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Empties tables with DELETE, or with TRUNCATE in the syntax of the database
+ * product read from {@link DatabaseMetaData}. TRUNCATE doesn't log or trigger
+ * per row, but databases refuse it e.g. for tables referenced by foreign
+ * keys, in which case DELETE is used instead.
+ * <p>
+ * Tables emptied together are ordered so that referencing tables come before
+ * the tables they reference, which lets the fallback DELETEs succeed too.
+ */
+class TableTruncator {
+
+	static final List<String> MODES = Arrays.asList("delete", "truncate");
+
+	static final List<String> FOREIGN_KEY_HANDLINGS = Arrays.asList("keep", "cascade", "disable");
+
+	private final Connection connection;
+	private final String product;
+	private final boolean truncate;
+	private final String foreignKeys;
+	private final boolean resetIdentity;
+
+	TableTruncator(Connection connection, String mode, String foreignKeys, boolean resetIdentity)
+			throws SQLException {
+		if (!MODES.contains(mode.toLowerCase())) {
+			throw new IllegalArgumentException(String.format("Mode must be one of %s, got '%s'", MODES, mode));
+		}
+		if (!FOREIGN_KEY_HANDLINGS.contains(foreignKeys.toLowerCase())) {
+			throw new IllegalArgumentException(String.format("Foreign key handling must be one of %s, got '%s'",
+					FOREIGN_KEY_HANDLINGS, foreignKeys));
+		}
+		this.connection = connection;
+		this.product = connection.getMetaData().getDatabaseProductName().toLowerCase();
+		this.truncate = "truncate".equalsIgnoreCase(mode);
+		this.foreignKeys = foreignKeys.toLowerCase();
+		this.resetIdentity = resetIdentity;
+	}
+
+	/**
+	 * Empties the given tables, referencing tables first.
+	 */
+	void empty(List<String> tableNames) throws SQLException {
+		List<String> ordered = tableNames.size() > 1 ? orderByDependencies(tableNames) : tableNames;
+		if (!truncate || !canTruncateInTransaction()) {
+			if (truncate) {
+				System.out.println("TRUNCATE would end the open transaction, deleting rows instead");
+			}
+			for (String tableName : ordered) {
+				delete(tableName);
+			}
+			return;
+		}
+		if (isProduct("postgresql")) {
+			// One statement handles the foreign keys between the tables
+			truncate(StringUtils.join(ordered, ", "), ordered);
+			return;
+		}
+		boolean disableChecks = "disable".equals(foreignKeys) && getReferentialIntegritySql(false) != null;
+		if (disableChecks) {
+			execute(getReferentialIntegritySql(false));
+		}
+		try {
+			for (String tableName : ordered) {
+				truncate(tableName, Arrays.asList(tableName));
+			}
+		} finally {
+			if (disableChecks) {
+				execute(getReferentialIntegritySql(true));
+			}
+		}
+	}
+
+	private void truncate(String tables, List<String> tableNames) throws SQLException {
+		String sql = getTruncateSql(tables);
+		if (sql == null) {
+			for (String tableName : tableNames) {
+				delete(tableName);
+			}
+			return;
+		}
+		// Failed statement aborts the whole transaction e.g. in PostgreSQL
+		Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+		try {
+			execute(sql);
+		} catch (SQLException e) {
+			if (savepoint != null) {
+				connection.rollback(savepoint);
+			}
+			System.out.println(String.format("TRUNCATE not allowed (%s), deleting rows instead", e.getMessage()));
+			for (String tableName : tableNames) {
+				delete(tableName);
+			}
+		}
+	}
+
+	private void delete(String tableName) throws SQLException {
+		if (resetIdentity && truncate) {
+			System.out.println("Rows of " + tableName + " deleted, identity columns are not reset");
+		}
+		execute("delete from " + tableName);
+	}
+
+	/**
+	 * Returns the TRUNCATE statement of the database product, or null if the
+	 * product doesn't have one.
+	 */
+	private String getTruncateSql(String tables) {
+		if (isProduct("sqlite")) {
+			// DELETE without where-clause is optimized to truncate
+			return null;
+		}
+		if (isProduct("postgresql")) {
+			return "TRUNCATE TABLE " + tables + (resetIdentity ? " RESTART IDENTITY" : "")
+					+ ("cascade".equals(foreignKeys) ? " CASCADE" : "");
+		}
+		if (isProduct("oracle")) {
+			return "TRUNCATE TABLE " + tables + ("cascade".equals(foreignKeys) ? " CASCADE" : "");
+		}
+		if (isProduct("db2")) {
+			return "TRUNCATE TABLE " + tables + " IMMEDIATE";
+		}
+		if (isProduct("h2") || isProduct("hsql")) {
+			return "TRUNCATE TABLE " + tables + (resetIdentity ? " RESTART IDENTITY" : "");
+		}
+		// MySQL, MariaDB, SQL Server and Derby always reset identities
+		return "TRUNCATE TABLE " + tables;
+	}
+
+	/**
+	 * Returns the statement disabling or enabling foreign key checks for the
+	 * session, or null if the database product doesn't have one.
+	 */
+	private String getReferentialIntegritySql(boolean enabled) {
+		if (isProduct("mysql") || isProduct("mariadb")) {
+			return "SET FOREIGN_KEY_CHECKS = " + (enabled ? "1" : "0");
+		}
+		if (isProduct("h2")) {
+			return "SET REFERENTIAL_INTEGRITY " + (enabled ? "TRUE" : "FALSE");
+		}
+		if (isProduct("hsql")) {
+			return "SET DATABASE REFERENTIAL INTEGRITY " + (enabled ? "TRUE" : "FALSE");
+		}
+		return null;
+	}
+
+	/**
+	 * TRUNCATE commits implicitly in most databases, so inside an open
+	 * transaction it's only used where it's transactional.
+	 */
+	private boolean canTruncateInTransaction() throws SQLException {
+		return connection.getAutoCommit() || isProduct("postgresql") || isProduct("microsoft sql server");
+	}
+
+	private boolean isProduct(String name) {
+		return product.contains(name);
+	}
+
+	private void execute(String sql) throws SQLException {
+		Statements.release(Statements.execute(connection, sql));
+	}
+
+	/**
+	 * Orders the tables so that tables referencing other given tables come
+	 * before them. Tables in reference cycles are kept in the given order.
+	 * Tables are identified by their catalog, schema and name, so that tables
+	 * with the same name in different schemas are kept apart.
+	 */
+	private List<String> orderByDependencies(List<String> tableNames) throws SQLException {
+		DatabaseMetaData dbm = connection.getMetaData();
+		Map<List<String>, String> byKey = new LinkedHashMap<List<String>, String>();
+		Set<List<String>> found = new LinkedHashSet<List<String>>();
+		for (String tableName : tableNames) {
+			String[] name = TableLookup.find(connection, tableName);
+			if (name != null) {
+				found.add(Arrays.asList(name));
+				byKey.put(Arrays.asList(name), tableName);
+			} else {
+				// Kept by the given name, and fails when emptied
+				byKey.put(Arrays.asList(null, null, tableName), tableName);
+			}
+		}
+		// Tables referencing each table
+		Map<List<String>, Set<List<String>>> referencedBy = new LinkedHashMap<List<String>, Set<List<String>>>();
+		for (List<String> key : byKey.keySet()) {
+			referencedBy.put(key, new LinkedHashSet<List<String>>());
+		}
+		for (List<String> key : found) {
+			ResultSet rs = dbm.getImportedKeys(key.get(0), key.get(1), key.get(2));
+			try {
+				while (rs.next()) {
+					List<String> parent = Arrays.asList(rs.getString("PKTABLE_CAT"), rs.getString("PKTABLE_SCHEM"),
+							rs.getString("PKTABLE_NAME"));
+					if (!parent.equals(key) && referencedBy.containsKey(parent)) {
+						referencedBy.get(parent).add(key);
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		}
+		List<String> ordered = new ArrayList<String>();
+		Set<List<String>> remaining = new LinkedHashSet<List<String>>(byKey.keySet());
+		while (!remaining.isEmpty()) {
+			List<String> next = null;
+			for (List<String> key : remaining) {
+				Set<List<String>> referencing = new LinkedHashSet<List<String>>(referencedBy.get(key));
+				referencing.retainAll(remaining);
+				if (referencing.isEmpty()) {
+					next = key;
+					break;
+				}
+			}
+			if (next == null) {
+				// Cycle, rest in the given order
+				next = remaining.iterator().next();
+			}
+			ordered.add(byKey.get(next));
+			remaining.remove(next);
+		}
+		return ordered;
+	}
+}
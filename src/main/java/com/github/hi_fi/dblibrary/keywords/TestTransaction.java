@@ -0,0 +1,63 @@
+package com.github.hi_fi.dblibrary.keywords;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transaction kept open over several keywords, so that the changes made by a
+ * test can be rolled back instead of deleting and reinserting the data.
+ * Savepoints are kept by name in the order they were set, as rolling back to
+ * a savepoint releases the savepoints set after it.
+ */
+class TestTransaction {
+
+	private final Connection connection;
+	private final Map<String, Savepoint> savepoints = new LinkedHashMap<String, Savepoint>();
+
+	TestTransaction(Connection connection) throws SQLException {
+		this.connection = connection;
+		connection.setAutoCommit(false);
+	}
+
+	Connection getConnection() {
+		return connection;
+	}
+
+	synchronized void setSavepoint(String name) throws SQLException {
+		// Savepoint set again with the same name moves to the end
+		savepoints.remove(name);
+		savepoints.put(name, connection.setSavepoint(name));
+	}
+
+	synchronized void rollbackToSavepoint(String name) throws SQLException {
+		Savepoint savepoint = savepoints.get(name);
+		if (savepoint == null) {
+			throw new IllegalStateException(
+					String.format("No savepoint %s in the test transaction, savepoints are %s", name,
+							savepoints.keySet()));
+		}
+		connection.rollback(savepoint);
+		List<String> names = new ArrayList<String>(savepoints.keySet());
+		for (String later : names.subList(names.indexOf(name) + 1, names.size())) {
+			savepoints.remove(later);
+		}
+	}
+
+	/**
+	 * Rolls back the whole transaction and returns the connection to
+	 * auto-commit mode.
+	 */
+	synchronized void rollback() throws SQLException {
+		try {
+			connection.rollback();
+		} finally {
+			savepoints.clear();
+			connection.setAutoCommit(true);
+		}
+	}
+}
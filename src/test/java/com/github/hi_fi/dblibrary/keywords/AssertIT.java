@@ -1,9 +1,14 @@
 package com.github.hi_fi.dblibrary.keywords;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -59,6 +64,60 @@ public class AssertIT {
 		asserter.checkContentForRowIdentifiedByRownum("Id,Name,Postings", "1|Donny Dar|1001", "MySampleTable", "100");
 	}
 
+	@Test
+	public void checkCheckContentIdentifiedbyRownumWithOrderBy() throws Exception {
+		asserter.checkContentForRowIdentifiedByRownum("Id,Name", "2|Darth Vader", "MySampleTable", "2", "Id");
+		asserter.checkContentForRowIdentifiedByRownum("Id,Name", "1|Donny Darko", "MySampleTable", "2", "Id DESC");
+	}
+
+	@Test
+	public void checkCheckContentIdentifiedbyRownum_ZeroRownum() throws Exception {
+		try {
+			asserter.checkContentForRowIdentifiedByRownum("Id", "1", "MySampleTable", "0", "Id");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertEquals("Given rownum does not exist for statement: select Id from MySampleTable order by Id",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void checkRowPositionerRowNumberStrategy() throws Exception {
+		RowPositioner positioner = new RowPositioner(DatabaseConnection.getConnection());
+		String sql = positioner.buildPositionedSelect(RowPositioner.Strategy.ROW_NUMBER, "Id,Name", "MySampleTable",
+				"Id DESC", 2);
+		List<LinkedHashMap<String, Object>> rows = new Query().executeSql(sql);
+		assertEquals(1, rows.size());
+		assertEquals("Donny Darko", rows.get(0).get("NAME"));
+		sql = positioner.buildPositionedSelect(RowPositioner.Strategy.ROW_NUMBER, "Id,Name", "MySampleTable", "", 2);
+		assertEquals(1, new Query().executeSql(sql).size());
+	}
+
+	@Test
+	public void checkRowPositionerKeepsResolvedStrategyOnErrors() throws Exception {
+		RowPositioner positioner = new RowPositioner(DatabaseConnection.getConnection());
+		final String[] name = new String[1];
+		RowPositioner.RowReader reader = new RowPositioner.RowReader() {
+			public void read(ResultSet rs) throws SQLException {
+				name[0] = rs.getString(1);
+			}
+		};
+		assertTrue(positioner.read("Name", "MySampleTable", "Id", 2, reader));
+		DatabaseConnection.getConnection().setAutoCommit(false);
+		try {
+			positioner.read("NonExistingColumn", "MySampleTable", "Id", 1, reader);
+			fail();
+		} catch (SQLException e) {
+			// Error of the resolved strategy, without falling back to others
+			assertEquals(0, e.getSuppressed().length);
+		} finally {
+			DatabaseConnection.getConnection().rollback();
+			DatabaseConnection.getConnection().setAutoCommit(true);
+		}
+		assertTrue(positioner.read("Name", "MySampleTable", "Id", 1, reader));
+		assertEquals("Donny Darko", name[0]);
+	}
+
 	// ========================================================
 	//
 	// Check Check Content for row identified by where-clause
@@ -90,6 +149,19 @@ public class AssertIT {
 				"id=1 or id=2");
 	}
 
+	@Test
+	public void checkCheckContentIdentifiedbyWhereClauseWithParameters() throws Exception {
+		asserter.checkContentForRowIdentifiedByWhereClauseWithParameters("Id,Name,Postings", "2|Darth Vader|123",
+				"MySampleTable", "id=? and Name=?", Arrays.<Object>asList(2, "Darth Vader"));
+	}
+
+	@Test(expected = DatabaseLibraryException.class)
+	public void checkCheckContentIdentifiedbyWhereClauseWithParameters_NoRecordFound()
+			throws DatabaseLibraryException, Exception {
+		asserter.checkContentForRowIdentifiedByWhereClauseWithParameters("Id,Name,Postings", "1|Donny Darko|1001",
+				"MySampleTable", "id=?", Arrays.<Object>asList("100"));
+	}
+
 	// ========================================================
 	//
 	// Check Table Must be Empty
@@ -183,6 +255,50 @@ public class AssertIT {
 		asserter.tableMustContainNumberOfRows("MySampleTable", "5");
 	}
 
+	@Test
+	public void checktable_must_contain_number_of_rows_TooManyRows() throws Exception {
+		try {
+			asserter.tableMustContainNumberOfRows("MySampleTable", "1");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertEquals("Expecting 1 rows, fetched: at least 2", e.getMessage());
+		}
+	}
+
+	@Test
+	public void checkRowCounterCountsOnlyUpToLimit() throws Exception {
+		RowCounter counter = new RowCounter(DatabaseConnection.getConnection());
+		assertEquals(1, counter.count("MySampleTable", null, null, 1));
+		assertEquals(2, counter.count("MySampleTable", null, null, 3));
+		assertEquals(2, counter.count("MySampleTable", null, null, Long.MAX_VALUE));
+		assertEquals(1, counter.count("MySampleTable", "Id > ?", Arrays.<Object>asList(1), 5));
+	}
+
+	@Test
+	public void checkRowCounterKeepsResolvedStrategyOnErrors() throws Exception {
+		RowCounter counter = new RowCounter(DatabaseConnection.getConnection());
+		assertEquals(1, counter.count("MySampleTable", null, null, 1));
+		DatabaseConnection.getConnection().setAutoCommit(false);
+		try {
+			counter.count("NonExistingTable", null, null, 1);
+			fail();
+		} catch (SQLException e) {
+			// Expected, strategy is not changed
+		} finally {
+			DatabaseConnection.getConnection().rollback();
+			DatabaseConnection.getConnection().setAutoCommit(true);
+		}
+		assertEquals(1, counter.count("MySampleTable", null, null, 1));
+	}
+
+	@Test
+	public void checkRowCounterStrategyByProduct() throws Exception {
+		assertEquals(RowCounter.Strategy.FETCH_FIRST, RowCounter.getStrategy("h2"));
+		assertEquals(RowCounter.Strategy.FETCH_FIRST, RowCounter.getStrategy("postgresql"));
+		assertEquals(RowCounter.Strategy.LIMIT, RowCounter.getStrategy("mysql"));
+		assertEquals(RowCounter.Strategy.TOP, RowCounter.getStrategy("microsoft sql server"));
+	}
+
 	// ========================================================
 	//
 	// Check Tables Must contain same amount of rows
@@ -213,6 +329,14 @@ public class AssertIT {
 	public void checkVerifyNumberOfRowsMatchingWhereFailure() throws DatabaseLibraryException, Exception {
 		asserter.verifyNumberOfRowsMatchingWhere("MySampleTable", "Postings > 0", "1");
 	}
+
+	@Test
+	public void checkVerifyNumberOfRowsMatchingWhereWithParameters() throws Exception {
+		asserter.verifyNumberOfRowsMatchingWhereWithParameters("MySampleTable", "EMail=? or Postings < ?", "2",
+				Arrays.<Object>asList("donny.darko@robot.org", 200));
+		asserter.verifyNumberOfRowsMatchingWhereWithParameters("MySampleTable", "EMail=?", "0",
+				Arrays.<Object>asList("' or '1'='1"));
+	}
 	
 	@Test
 	public void checktransactionIsolationLevelMustBe() throws Exception {
@@ -260,4 +384,27 @@ public class AssertIT {
 			assertEquals("Row exists (but should not) for where-clause: Name='Darth Vader' in table: MySampleTable", e.getMessage());
 		}
 	}
+
+	@Test
+	public void checkRowShouldNotExistInTableWithParameters() throws SQLException, DatabaseLibraryException {
+		asserter.rowShouldNotExistInTable("MySampleTable", "Name=?", Arrays.<Object>asList("John Doe"));
+	}
+
+	// Tests for "Row Should Exist In Table"
+	@Test
+	public void checkRowShouldExistInTable() throws SQLException, DatabaseLibraryException {
+		asserter.rowShouldExistInTable("MySampleTable", "Name='Darth Vader'");
+		asserter.rowShouldExistInTable("MySampleTable", "Id > ?", Arrays.<Object>asList(0));
+	}
+
+	@Test
+	public void checkRowShouldExistInTableFailsIfRowDoesNotExist() throws SQLException, DatabaseLibraryException {
+		try {
+			asserter.rowShouldExistInTable("MySampleTable", "Id=?", Arrays.<Object>asList(3));
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertEquals("Row does not exist (but should) for where-clause: Id=? in table: MySampleTable",
+					e.getMessage());
+		}
+	}
 }
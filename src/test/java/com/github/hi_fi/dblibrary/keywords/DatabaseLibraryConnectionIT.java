@@ -1,8 +1,20 @@
 package com.github.hi_fi.dblibrary.keywords;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Driver;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -63,4 +75,213 @@ public class DatabaseLibraryConnectionIT {
 		asserter.tableMustBeEmpty("NoConnection");
 	}
 
+	@Test
+	public void checkConnectToDatabaseWithPool() throws Exception {
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "pooledAlias", "2", "1", "SELECT 1", "600",
+				"1800");
+		try {
+			Map<String, Object> stats = databaseConnection.getConnectionPoolStatistics("pooledAlias");
+			assertEquals(1, stats.get("open"));
+			assertEquals(1, stats.get("idle"));
+
+			Connection borrowed = DatabaseConnection.getConnection("pooledAlias");
+			assertSame(borrowed, DatabaseConnection.getConnection("pooledAlias"));
+			stats = databaseConnection.getConnectionPoolStatistics("pooledAlias");
+			assertEquals(1, stats.get("active"));
+			assertEquals(0, stats.get("idle"));
+
+			DatabaseConnection.releaseBorrowedConnections();
+			stats = databaseConnection.getConnectionPoolStatistics("pooledAlias");
+			assertEquals(0, stats.get("active"));
+			assertEquals(1, stats.get("idle"));
+			assertEquals(1L, stats.get("borrows"));
+		} finally {
+			databaseConnection.disconnectFromDatabase("pooledAlias");
+		}
+	}
+
+	@Test
+	public void checkRecentlyUsedPooledConnectionIsNotValidatedOnBorrow() throws Exception {
+		// Failing validation query would evict every validated connection
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "pooledAlias", "2", "0",
+				"SELECT * FROM NonExistingTable", "0", "0");
+		try {
+			Connection borrowed = DatabaseConnection.getConnection("pooledAlias");
+			DatabaseConnection.releaseBorrowedConnections();
+			assertSame(borrowed, DatabaseConnection.getConnection("pooledAlias"));
+			DatabaseConnection.releaseBorrowedConnections();
+			assertEquals(0L, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("evicted"));
+
+			// Closed connection is still detected without a round trip
+			borrowed.close();
+			assertNotSame(borrowed, DatabaseConnection.getConnection("pooledAlias"));
+			DatabaseConnection.releaseBorrowedConnections();
+			assertEquals(1L, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("evicted"));
+		} finally {
+			databaseConnection.disconnectFromDatabase("pooledAlias");
+		}
+	}
+
+	@Test
+	public void checkPooledConnectionsAreBorrowedPerThread() throws Exception {
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "pooledAlias", "2", "0", "", "0", "0");
+		try {
+			final Connection[] otherThreadConnection = new Connection[1];
+			Connection borrowed = DatabaseConnection.getConnection("pooledAlias");
+			Thread other = new Thread(new Runnable() {
+				public void run() {
+					otherThreadConnection[0] = DatabaseConnection.getConnection("pooledAlias");
+				}
+			});
+			other.start();
+			other.join();
+			assertNotSame(borrowed, otherThreadConnection[0]);
+			assertEquals(2, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("active"));
+		} finally {
+			databaseConnection.disconnectFromDatabase("pooledAlias");
+		}
+	}
+
+	@Test
+	public void checkThreadsKeepSeparateActiveAliases() throws Exception {
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "globalAlias");
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "threadAlias");
+		databaseConnection.activateDatabaseConnection("globalAlias");
+		try {
+			final String[] otherThreadAlias = new String[2];
+			final CountDownLatch activated = new CountDownLatch(1);
+			final CountDownLatch checked = new CountDownLatch(1);
+			Thread other = new Thread(new Runnable() {
+				public void run() {
+					databaseConnection.activateDatabaseConnection("threadAlias", "thread");
+					activated.countDown();
+					try {
+						checked.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					otherThreadAlias[0] = DatabaseConnection.getCurrentConnectionAlias();
+					// End of the keyword
+					DatabaseConnection.clearThreadConnectionAlias();
+					otherThreadAlias[1] = DatabaseConnection.getCurrentConnectionAlias();
+				}
+			});
+			other.start();
+			activated.await();
+			// Both threads have their own alias active at the same time
+			assertEquals("globalAlias", DatabaseConnection.getCurrentConnectionAlias());
+			checked.countDown();
+			other.join();
+			assertEquals("threadAlias", otherThreadAlias[0]);
+			assertEquals("globalAlias", otherThreadAlias[1]);
+		} finally {
+			databaseConnection.disconnectFromDatabase("threadAlias");
+			databaseConnection.disconnectFromDatabase("globalAlias");
+		}
+	}
+
+	@Test
+	public void checkDriverIsLoadedOnceFromSeparateClassLoader() throws Exception {
+		String jarPath = new File(org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getPath();
+		Driver driver = DriverRegistry.getDriver(ConnectionHelper.H2_DRIVER_CLASSNAME, jarPath);
+		assertSame(driver, DriverRegistry.getDriver(ConnectionHelper.H2_DRIVER_CLASSNAME, jarPath));
+		assertNotSame(org.h2.Driver.class, driver.getClass());
+		assertSame(DriverRegistry.getDriver(ConnectionHelper.H2_DRIVER_CLASSNAME, ""),
+				DriverRegistry.getDriver(ConnectionHelper.H2_DRIVER_CLASSNAME, null));
+
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "jarAlias", "0", "0", "", "0", "0", jarPath);
+		try {
+			assertSame(driver.getClass().getClassLoader(),
+					DatabaseConnection.getConnection("jarAlias").getClass().getClassLoader());
+		} finally {
+			databaseConnection.disconnectFromDatabase("jarAlias");
+		}
+	}
+
+	@Test
+	public void checkConnectToDatabasesReportsAllFailures() throws Exception {
+		Map<String, String> mapDefinition = new HashMap<String, String>();
+		mapDefinition.put("driver", ConnectionHelper.H2_DRIVER_CLASSNAME);
+		mapDefinition.put("url", ConnectionHelper.H2_URL);
+		mapDefinition.put("user", ConnectionHelper.H2_USER);
+		mapDefinition.put("password", ConnectionHelper.H2_PASSWORD);
+		mapDefinition.put("alias", "mapAlias");
+		try {
+			databaseConnection.connectToDatabases(Arrays.asList(
+					Arrays.asList(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+							ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "listAlias"),
+					Arrays.asList(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL, "xyz",
+							ConnectionHelper.H2_PASSWORD, "wrongUserAlias"),
+					mapDefinition), "2");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 3 connections failed"));
+			assertTrue(e.getMessage(), e.getMessage().contains("wrongUserAlias"));
+		}
+		assertEquals("mapAlias", DatabaseConnection.getCurrentConnectionAlias());
+		databaseConnection.disconnectFromDatabase("listAlias");
+		databaseConnection.disconnectFromDatabase("mapAlias");
+	}
+
+	@Test
+	public void checkKeepaliveReopensDroppedConnection() throws Exception {
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "keepaliveAlias");
+		try {
+			databaseConnection.setConnectionKeepalive("60", "SELECT 1", "keepaliveAlias");
+			Connection dropped = DatabaseConnection.getConnection("keepaliveAlias");
+			dropped.close();
+			Connection reopened = DatabaseConnection.getConnection("keepaliveAlias");
+			assertNotSame(dropped, reopened);
+			assertFalse(reopened.isClosed());
+		} finally {
+			databaseConnection.disconnectFromDatabase("keepaliveAlias");
+		}
+	}
+
+	@Test
+	public void checkKeepaliveDoesNotTouchConnectionOfOpenCursor() throws Exception {
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "keepaliveAlias");
+		try {
+			// Failing ping would reopen the connection if it was pinged
+			databaseConnection.setConnectionKeepalive("1", "SELECT * FROM NonExistingTable", "keepaliveAlias");
+			QueryCursor cursor = new QueryCursor("keepaliveAlias", "SELECT X FROM SYSTEM_RANGE(1, 10)",
+					StatementOptions.DEFAULT);
+			try {
+				assertEquals(1, cursor.fetch(1).size());
+				Thread.sleep(2500);
+				assertEquals(9, cursor.fetch(10).size());
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			databaseConnection.disconnectFromDatabase("keepaliveAlias");
+		}
+	}
+
+	@Test
+	public void checkKeepaliveDoesNotReopenConnectionInTransaction() throws Exception {
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "keepaliveAlias");
+		databaseConnection.setConnectionKeepalive("60", "", "keepaliveAlias");
+		Connection inTransaction = DatabaseConnection.getConnection("keepaliveAlias");
+		inTransaction.setAutoCommit(false);
+		DatabaseConnection.getConnection("keepaliveAlias");
+		inTransaction.close();
+		assertSame(inTransaction, DatabaseConnection.getConnection("keepaliveAlias"));
+		try {
+			databaseConnection.disconnectFromDatabase("keepaliveAlias");
+		} catch (SQLException e) {
+			// Connection was closed already
+		}
+	}
+
 }
@@ -135,4 +135,67 @@ public class FileHandlingIT {
 	    	br.close();
 	    }
 	}
+
+	// ========================================================
+	//
+	// Load and Unload CSV
+	//
+	// ========================================================
+
+	@Test
+	public void checkUnloadAndLoadCsv() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.csv";
+		assertEquals(2, fileHandling.unloadTableToCsv("MySampleTable", myFileName));
+		BufferedReader br = new BufferedReader(new FileReader(myFileName));
+		try {
+			assertEquals("ID,NAME,EMAIL,POSTINGS,STATE,LASTPOSTING", br.readLine());
+			assertEquals("1,Donny Darko,donny.darko@robot.org,1001,1,2010-02-26 12:42:58", br.readLine());
+		} finally {
+			br.close();
+		}
+
+		new Query().deleteAllRowsFromTable("MySampleTable");
+		assertEquals(2, fileHandling.loadCsvIntoTable(myFileName, "MySampleTable"));
+		new Assert().checkContentForRowIdentifiedByWhereClause("Name,Postings", "Darth Vader|123", "MySampleTable",
+				"Id=2");
+	}
+
+	@Test
+	public void checkLoadCsvWithColumnMappingAndQuotes() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.csv";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("Identifier;Name;Comment\r\n");
+		out.write("1;\"Doe; John\";x\r\n");
+		out.write("2;\"Multi\nline \"\"quoted\"\"\";\r\n");
+		out.write("3;;\r\n");
+		out.write("4;\"\";\n");
+		out.close();
+		assertEquals(4, fileHandling.loadCsvIntoTable(myFileName, "EmptyTable", "Identifier=Id, Comment=", ";",
+				"3", "0"));
+		Query query = new Query();
+		assertEquals("Doe; John", query.readSingleValueFromTable("EmptyTable", "Name", "Id=1"));
+		assertEquals("Multi\nline \"quoted\"", query.readSingleValueFromTable("EmptyTable", "Name", "Id=2"));
+		new Assert().verifyNumberOfRowsMatchingWhere("EmptyTable", "Name IS NULL", "1");
+		assertEquals("", query.readSingleValueFromTable("EmptyTable", "Name", "Id=4"));
+	}
+
+	@Test
+	public void checkUnloadAndLoadCsvWithSingleEmptyColumn() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.csv";
+		Query query = new Query();
+		query.executeSql("CREATE TABLE SingleColumnTable (Note VARCHAR(20))");
+		try {
+			query.executeSql("INSERT INTO SingleColumnTable VALUES ('x'), (NULL), (''), (NULL)");
+			assertEquals(4, fileHandling.unloadTableToCsv("SingleColumnTable", myFileName));
+
+			query.deleteAllRowsFromTable("SingleColumnTable");
+			assertEquals(4, fileHandling.loadCsvIntoTable(myFileName, "SingleColumnTable"));
+			Assert assertion = new Assert();
+			assertion.verifyNumberOfRowsMatchingWhere("SingleColumnTable", "Note IS NULL", "2");
+			assertion.verifyNumberOfRowsMatchingWhere("SingleColumnTable", "Note = ''", "1");
+			assertion.verifyNumberOfRowsMatchingWhere("SingleColumnTable", "Note = 'x'", "1");
+		} finally {
+			query.executeSql("DROP TABLE SingleColumnTable");
+		}
+	}
 }
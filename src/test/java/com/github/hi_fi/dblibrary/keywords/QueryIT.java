@@ -1,12 +1,22 @@
 package com.github.hi_fi.dblibrary.keywords;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.StringReader;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
@@ -55,6 +65,561 @@ public class QueryIT {
 		asserter.tableMustExist("TESTTABLE");
 	}
 
+	@Test
+	public void checkExecuteSQLWithStatementCache() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setStatementCacheSize("10");
+		try {
+			long hits = (Long) databaseConnection.getStatementCacheStatistics().get("hits");
+			query.readSingleValueFromTable("MySampleTable", "Name", "Id = 1");
+			assertEquals("Donny Darko", query.readSingleValueFromTable("MySampleTable", "Name", "Id = 1"));
+			assertEquals(hits + 1, databaseConnection.getStatementCacheStatistics().get("hits"));
+			// One-off SQL is not prepared
+			int cached = (Integer) databaseConnection.getStatementCacheStatistics().get("cached");
+			query.executeSql("SELECT * FROM MySampleTable WHERE Name <> '?'");
+			query.executeSql("CREATE TABLE TestTableESQLSC (Num Integer)");
+			query.executeSql("DROP TABLE TestTableESQLSC");
+			assertEquals(cached, databaseConnection.getStatementCacheStatistics().get("cached"));
+		} finally {
+			databaseConnection.setStatementCacheSize("0");
+		}
+		assertEquals(0, databaseConnection.getStatementCacheStatistics().get("cached"));
+	}
+
+	@Test
+	public void checkStatementCacheIsRemovedOnDisconnect() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setStatementCacheSize("10");
+		try {
+			databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+					ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "cacheAlias");
+			int cached = (Integer) databaseConnection.getStatementCacheStatistics().get("cached");
+			query.readSingleValueFromTable("MySampleTable", "Name", "Id = 1");
+			assertEquals(cached + 1, databaseConnection.getStatementCacheStatistics().get("cached"));
+			databaseConnection.disconnectFromDatabase("cacheAlias");
+			assertEquals(cached, databaseConnection.getStatementCacheStatistics().get("cached"));
+		} finally {
+			databaseConnection.setStatementCacheSize("0");
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void checkExecuteSQLWithResultFormat() throws Exception {
+		String sql = "SELECT Id, Name FROM MySampleTable ORDER BY Id";
+		Map<String, List<?>> table = (Map<String, List<?>>) query.executeSql(sql, "rows");
+		assertEquals(Arrays.asList("ID", "NAME"), table.get("columns"));
+		assertEquals(Arrays.asList(Arrays.<Object>asList(1, "Donny Darko"), Arrays.<Object>asList(2, "Darth Vader")),
+				table.get("rows"));
+
+		Map<String, List<Object>> columns = (Map<String, List<Object>>) query.executeSql(sql, "COLUMNS");
+		assertEquals(Arrays.<Object>asList(1, 2), columns.get("ID"));
+		assertEquals(Arrays.<Object>asList("Donny Darko", "Darth Vader"), columns.get("NAME"));
+
+		assertEquals(query.executeSql(sql), query.executeSql(sql, "dictionaries"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void checkExecuteSQLWithUnknownResultFormat() throws Exception {
+		query.executeSql("DELETE FROM MySampleTable", "tuples");
+	}
+
+	@Test
+	public void checkExecuteSQLWithParameters() throws Exception {
+		query.executeSqlWithParameters("UPDATE MySampleTable SET Postings = ? WHERE Id = ?",
+				Arrays.<Object>asList(7, "1"));
+		List<LinkedHashMap<String, Object>> rows = query.executeSqlWithParameters(
+				"SELECT Name, Postings FROM MySampleTable WHERE Name = ?", Arrays.<Object>asList("Donny Darko"));
+		assertEquals(1, rows.size());
+		assertEquals(7, rows.get(0).get("POSTINGS"));
+	}
+
+	@Test
+	public void checkExecuteSqlWithNullParameters() throws Exception {
+		query.executeSqlWithParameters("UPDATE MySampleTable SET Postings = ?, Email = ? WHERE Id = ?",
+				Arrays.<Object>asList(null, null, "1"));
+		asserter.verifyNumberOfRowsMatchingWhere("MySampleTable", "Postings IS NULL AND Email IS NULL", "1");
+	}
+
+	@Test
+	public void checkExecuteSqlWithAllResults() throws Exception {
+		List<Map<String, Object>> results = query.executeSqlWithAllResults("SELECT Id FROM MySampleTable ORDER BY Id",
+				"columns", null, null, null);
+		assertEquals(1, results.size());
+		assertEquals(Arrays.asList(1, 2), ((Map<?, ?>) results.get(0).get("result set")).get("ID"));
+
+		results = query.executeSqlWithAllResults("UPDATE MySampleTable SET Postings = 0");
+		assertEquals(1, results.size());
+		assertEquals(2, results.get(0).get("update count"));
+	}
+
+	// ========================================================
+	//
+	// Check Statement Options
+	//
+	// ========================================================
+
+	@Test
+	public void checkStatementOptionsMaxRows() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setStatementOptions("100", "1", "0", "defaultAlias");
+		try {
+			assertEquals(1, ((List<?>) query.executeSql("SELECT * FROM MySampleTable", "dictionaries")).size());
+			assertEquals(2, ((List<?>) query.executeSql("SELECT * FROM MySampleTable", "dictionaries", null, "0",
+					null)).size());
+			// Assertions always see all the rows
+			asserter.tableMustContainNumberOfRows("MySampleTable", "2");
+		} finally {
+			databaseConnection.setStatementOptions("0", "0", "0", "defaultAlias");
+		}
+	}
+
+	@Test
+	public void checkStatementOptionsRestoreDefaultFetchSize() throws Exception {
+		Statement stmt = DatabaseConnection.getConnection().createStatement();
+		try {
+			int defaultFetchSize = stmt.getFetchSize();
+			new StatementOptions(defaultFetchSize + 10, 0, 0).applyTo(stmt);
+			assertEquals(defaultFetchSize + 10, stmt.getFetchSize());
+			// Cached statement gets the driver's fetch size back
+			StatementOptions.DEFAULT.applyTo(stmt);
+			assertEquals(defaultFetchSize, stmt.getFetchSize());
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@Test
+	public void checkStatementIsCancelledAfterQueryTimeout() throws Exception {
+		long start = System.currentTimeMillis();
+		try {
+			query.executeSql("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) A, SYSTEM_RANGE(1, 100000) B",
+					"dictionaries", null, null, "1");
+			fail();
+		} catch (SQLException e) {
+			assertTrue("Statement was not cancelled in time", System.currentTimeMillis() - start < 10000);
+		}
+	}
+
+	@Test
+	public void checkBatchIsCancelledAfterQueryTimeout() throws Exception {
+		query.executeSql("CREATE TABLE TestTableBCAQT (Amount BIGINT)");
+		// Driver's own query timeout isn't set, so only cancelling stops the batch
+		Statement stmt = DatabaseConnection.getConnection().createStatement();
+		try {
+			stmt.addBatch("INSERT INTO TestTableBCAQT SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) A, "
+					+ "SYSTEM_RANGE(1, 100000) B");
+			long start = System.currentTimeMillis();
+			try {
+				Statements.executeBatchWithTimeout(stmt, 1);
+				fail();
+			} catch (SQLTimeoutException e) {
+				assertTrue("Batch was not cancelled in time", System.currentTimeMillis() - start < 10000);
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	// ========================================================
+	//
+	// Check Insert Rows Into Table
+	//
+	// ========================================================
+
+	@Test
+	public void checkInsertRowsIntoTable() throws Exception {
+		query.executeSql("CREATE TABLE TestTableIRIT (Id Integer PRIMARY KEY, Name VARCHAR(64), Amount DECIMAL(10,2))");
+		List<Object> rows = new ArrayList<Object>();
+		for (int i = 1; i <= 25; i++) {
+			Map<String, Object> row = new LinkedHashMap<String, Object>();
+			row.put("id", String.valueOf(i));
+			row.put("Name", "Name " + i);
+			row.put("AMOUNT", i % 5 == 0 ? null : "1.5");
+			rows.add(row);
+		}
+		rows.add(Arrays.<Object>asList(26, "List row", "2.25"));
+		assertEquals(26, query.insertRowsIntoTable("TestTableIRIT", rows, "10", "0"));
+		asserter.tableMustContainNumberOfRows("TestTableIRIT", "26");
+		asserter.verifyNumberOfRowsMatchingWhere("TestTableIRIT", "Amount IS NULL", "5");
+		assertEquals("List row", query.readSingleValueFromTable("TestTableIRIT", "Name", "Amount=2.25"));
+	}
+
+	@Test
+	public void checkInsertRowsIntoTableRollsBackUncommittedRows() throws Exception {
+		query.executeSql("CREATE TABLE TestTableIRITR (Id Integer PRIMARY KEY)");
+		List<Object> rows = new ArrayList<Object>();
+		for (int i : new int[] { 1, 2, 3, 4, 4 }) {
+			rows.add(Arrays.<Object>asList(i));
+		}
+		try {
+			query.insertRowsIntoTable("TestTableIRITR", rows, "2", "2");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Error inserting row 5 into TestTableIRITR"));
+		}
+		asserter.tableMustContainNumberOfRows("TestTableIRITR", "4");
+	}
+
+	@Test
+	public void checkInsertRowsIntoTableWithWildcardInName() throws Exception {
+		query.executeSql("CREATE TABLE TestTable_IRW (Id Integer)");
+		query.executeSql("CREATE TABLE TestTableXIRW (Other Integer, Name VARCHAR(64))");
+		try {
+			List<Object> rows = new ArrayList<Object>();
+			rows.add(Arrays.<Object>asList(1));
+			assertEquals(1, query.insertRowsIntoTable("TestTable_IRW", rows));
+			asserter.tableMustContainNumberOfRows("TestTable_IRW", "1");
+			asserter.tableMustBeEmpty("TestTableXIRW");
+		} finally {
+			query.executeSql("DROP TABLE TestTable_IRW");
+			query.executeSql("DROP TABLE TestTableXIRW");
+		}
+	}
+
+	// ========================================================
+	//
+	// Check Result Cache
+	//
+	// ========================================================
+
+	@Test
+	public void checkResultCacheIsInvalidatedByWrites() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setResultCache("60", "10", "0", "defaultAlias");
+		try {
+			String sql = "SELECT COUNT(*) AS Amount FROM MySampleTable";
+			query.executeSql(sql, "dictionaries");
+			// Changing the returned result does not change the cached one
+			((List<?>) query.executeSql(sql, "dictionaries")).clear();
+			assertEquals(1, ((List<?>) query.executeSql(sql, "dictionaries")).size());
+			Map<String, Object> statistics = databaseConnection.getResultCacheStatistics("defaultAlias");
+			assertEquals(2L, statistics.get("hits"));
+			assertEquals(1L, statistics.get("misses"));
+			assertEquals(1, statistics.get("cached"));
+
+			query.deleteAllRowsFromTable("MySampleTable");
+			assertEquals(0, databaseConnection.getResultCacheStatistics("defaultAlias").get("cached"));
+			assertEquals(0L, ((Map<?, ?>) ((List<?>) query.executeSql(sql, "dictionaries")).get(0)).get("AMOUNT"));
+			assertEquals(1L, databaseConnection.getResultCacheStatistics("defaultAlias").get("invalidations"));
+		} finally {
+			databaseConnection.setResultCache("0", "10", "0", "defaultAlias");
+		}
+	}
+
+	@Test
+	public void checkResultCacheSkipsResultsReadBeforeInvalidation() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setResultCache("60", "10", "0", "defaultAlias");
+		try {
+			long generation = ResultCache.getGeneration("defaultAlias");
+			// Write of another thread during the query
+			ResultCache.invalidate("defaultAlias");
+			ResultCache.put("defaultAlias", "stale", "old value", generation);
+			assertEquals(0, databaseConnection.getResultCacheStatistics("defaultAlias").get("cached"));
+			ResultCache.put("defaultAlias", "fresh", "new value", ResultCache.getGeneration("defaultAlias"));
+			assertEquals("new value", ResultCache.get("defaultAlias", "fresh"));
+		} finally {
+			databaseConnection.setResultCache("0", "10", "0", "defaultAlias");
+		}
+	}
+
+	@Test
+	public void checkResultCacheEvictsLeastRecentlyUsed() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setResultCache("60", "1", "0", "defaultAlias");
+		try {
+			query.readSingleValueFromTable("MySampleTable", "Name", "Id=1");
+			query.readSingleValueFromTable("MySampleTable", "Name", "Id=2");
+			query.readSingleValueFromTable("MySampleTable", "Name", "Id=2");
+			Map<String, Object> statistics = databaseConnection.getResultCacheStatistics("defaultAlias");
+			assertEquals(1L, statistics.get("hits"));
+			assertEquals(1L, statistics.get("evictions"));
+			assertEquals(1, statistics.get("cached"));
+		} finally {
+			databaseConnection.setResultCache("0", "10", "0", "defaultAlias");
+		}
+	}
+
+	// ========================================================
+	//
+	// Check Async SQL
+	//
+	// ========================================================
+
+	@Test
+	public void checkStartSqlAsyncAndWait() throws Exception {
+		String first = query.startSqlAsync("SELECT Id FROM MySampleTable WHERE Id = 1");
+		String second = query.startSqlAsync("SELECT COUNT(*) AS Amount FROM MySampleTable");
+		assertEquals(1, query.waitForSql(first).size());
+		assertEquals(1, query.waitForSql(second, "10").size());
+		try {
+			query.waitForSql(first);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("No started SQL with handle " + first, e.getMessage());
+		}
+	}
+
+	@Test
+	public void checkCancelSql() throws Exception {
+		long start = System.currentTimeMillis();
+		String handle = query
+				.startSqlAsync("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) A, SYSTEM_RANGE(1, 100000) B");
+		try {
+			query.waitForSql(handle, "1");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("still running"));
+		}
+		query.cancelSql(handle);
+		assertTrue("Statement was not cancelled in time", System.currentTimeMillis() - start < 10000);
+	}
+
+	@Test
+	public void checkFailedAsyncSqlFailsWait() throws Exception {
+		String handle = query.startSqlAsync("SELECT * FROM NoSuchTable");
+		try {
+			query.waitForSql(handle);
+			fail();
+		} catch (SQLException e) {
+			// Expected
+		}
+	}
+
+	// ========================================================
+	//
+	// Check Query Cursor
+	//
+	// ========================================================
+
+	@Test
+	public void checkQueryCursor() throws Exception {
+		String cursor = query.openQueryCursor("SELECT Name FROM MySampleTable ORDER BY Id", "1");
+		// Results are streamed inside a transaction
+		assertFalse(DatabaseConnection.getConnection().getAutoCommit());
+		List<LinkedHashMap<String, Object>> rows = query.fetchNextRows(cursor, "1");
+		assertEquals(1, rows.size());
+		assertEquals("Donny Darko", rows.get(0).get("NAME"));
+		rows = query.fetchNextRows(cursor, "5");
+		assertEquals(1, rows.size());
+		assertEquals("Darth Vader", rows.get(0).get("NAME"));
+		assertEquals(0, query.fetchNextRows(cursor, "5").size());
+		query.closeQueryCursor(cursor);
+		assertTrue(DatabaseConnection.getConnection().getAutoCommit());
+		try {
+			query.fetchNextRows(cursor, "1");
+			fail();
+		} catch (IllegalStateException e) {
+			// Cursor is closed
+		}
+	}
+
+	@Test
+	public void checkQueryCursorKeepsPooledConnection() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "pooledAlias", "2", "0", "", "0", "0");
+		try {
+			String cursor = query.openQueryCursor("SELECT * FROM MySampleTable");
+			DatabaseConnection.releaseBorrowedConnections();
+			assertEquals(1, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("active"));
+			assertEquals(2, query.fetchNextRows(cursor, "10").size());
+			query.closeQueryCursor(cursor);
+			assertEquals(0, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("active"));
+		} finally {
+			databaseConnection.disconnectFromDatabase("pooledAlias");
+		}
+	}
+
+	// ========================================================
+	//
+	// Check Delete All Rows From Table
+	//
+	// ========================================================
+
+	@Test
+	public void checkTruncateTableWithIdentityReset() throws Exception {
+		query.executeSql("CREATE TABLE TestTableTRI (Id Integer GENERATED BY DEFAULT AS IDENTITY, Name VARCHAR(64))");
+		try {
+			query.executeSql("INSERT INTO TestTableTRI (Name) VALUES ('a'), ('b')");
+			query.deleteAllRowsFromTable("TestTableTRI", "truncate", "keep", "True");
+			asserter.tableMustBeEmpty("TestTableTRI");
+			query.executeSql("INSERT INTO TestTableTRI (Name) VALUES ('c')");
+			assertEquals("1", query.readSingleValueFromTable("TestTableTRI", "Id", "Name = 'c'"));
+		} finally {
+			query.executeSql("DROP TABLE TestTableTRI");
+		}
+	}
+
+	@Test
+	public void checkTruncateTablesInDependencyOrder() throws Exception {
+		query.executeSql("CREATE TABLE TestTableTRParent (Id Integer PRIMARY KEY)");
+		query.executeSql("CREATE TABLE TestTableTRChild (Id Integer, ParentId Integer REFERENCES TestTableTRParent(Id))");
+		try {
+			query.executeSql("INSERT INTO TestTableTRParent VALUES (1)");
+			query.executeSql("INSERT INTO TestTableTRChild VALUES (1, 1)");
+			// Referenced table can't be truncated, rows are deleted instead
+			query.deleteAllRowsFromTables(Arrays.asList("TestTableTRParent", "TestTableTRChild"), "truncate", "keep",
+					"False");
+			asserter.tableMustBeEmpty("TestTableTRParent");
+			asserter.tableMustBeEmpty("TestTableTRChild");
+			query.executeSql("INSERT INTO TestTableTRParent VALUES (1)");
+			query.executeSql("INSERT INTO TestTableTRChild VALUES (1, 1)");
+			query.deleteAllRowsFromTable("TestTableTRParent", "truncate", "disable", "False");
+			asserter.tableMustBeEmpty("TestTableTRParent");
+			asserter.tableMustContainNumberOfRows("TestTableTRChild", "1");
+		} finally {
+			query.executeSql("DROP TABLE TestTableTRChild");
+			query.executeSql("DROP TABLE TestTableTRParent");
+		}
+	}
+
+	@Test
+	public void checkTruncateTablesWithWildcardInNames() throws Exception {
+		query.executeSql("CREATE TABLE TestTableTR_P (Id Integer PRIMARY KEY)");
+		query.executeSql("CREATE TABLE TestTableTR_C (Id Integer, ParentId Integer REFERENCES TestTableTR_P(Id))");
+		// Would match TestTableTR_C as a LIKE pattern
+		query.executeSql("CREATE TABLE TestTableTRXC (Id Integer)");
+		try {
+			query.executeSql("INSERT INTO TestTableTR_P VALUES (1)");
+			query.executeSql("INSERT INTO TestTableTR_C VALUES (1, 1)");
+			query.executeSql("INSERT INTO TestTableTRXC VALUES (1)");
+			query.deleteAllRowsFromTables(Arrays.asList("TestTableTR_P", "TestTableTR_C"), "truncate", "keep",
+					"False");
+			asserter.tableMustBeEmpty("TestTableTR_P");
+			asserter.tableMustBeEmpty("TestTableTR_C");
+			asserter.tableMustContainNumberOfRows("TestTableTRXC", "1");
+		} finally {
+			query.executeSql("DROP TABLE TestTableTRXC");
+			query.executeSql("DROP TABLE TestTableTR_C");
+			query.executeSql("DROP TABLE TestTableTR_P");
+		}
+	}
+
+	@Test
+	public void checkTruncateTablesWithSameNameInDifferentSchemas() throws Exception {
+		query.executeSql("CREATE SCHEMA TRA");
+		query.executeSql("CREATE SCHEMA TRB");
+		query.executeSql("CREATE TABLE TRA.TestTableTRS (Id Integer PRIMARY KEY)");
+		query.executeSql("CREATE TABLE TRB.TestTableTRS (Id Integer, ParentId Integer REFERENCES TRA.TestTableTRS(Id))");
+		try {
+			query.executeSql("INSERT INTO TRA.TestTableTRS VALUES (1)");
+			query.executeSql("INSERT INTO TRB.TestTableTRS VALUES (1, 1)");
+			query.deleteAllRowsFromTables(Arrays.asList("TRA.TestTableTRS", "TRB.TestTableTRS"), "truncate", "keep",
+					"False");
+			asserter.tableMustBeEmpty("TRA.TestTableTRS");
+			asserter.tableMustBeEmpty("TRB.TestTableTRS");
+		} finally {
+			query.executeSql("DROP SCHEMA TRB CASCADE");
+			query.executeSql("DROP SCHEMA TRA CASCADE");
+		}
+	}
+
+	@Test
+	public void checkTruncateDeletesInTestTransaction() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.beginTestTransaction();
+		try {
+			query.deleteAllRowsFromTable("MySampleTable", "truncate", "keep", "False");
+			asserter.tableMustBeEmpty("MySampleTable");
+		} finally {
+			databaseConnection.rollbackTestTransaction();
+		}
+		asserter.tableMustContainNumberOfRows("MySampleTable", "2");
+	}
+
+	@Test
+	public void checkDeleteAllRowsWithInvalidMode() throws Exception {
+		try {
+			query.deleteAllRowsFromTable("MySampleTable", "drop", "keep", "False");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Mode must be one of"));
+		}
+	}
+
+	// ========================================================
+	//
+	// Check Test Transaction
+	//
+	// ========================================================
+
+	@Test
+	public void checkRollbackToSavepointAndTestTransaction() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.beginTestTransaction();
+		try {
+			query.deleteAllRowsFromTable("MySampleTable");
+			databaseConnection.setSavepoint("empty");
+			String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+			BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+			out.write("INSERT INTO MySampleTable (Id, Name) VALUES(3, 'Luke');\n");
+			out.close();
+			query.executeSqlFromFile(myFileName);
+			asserter.tableMustContainNumberOfRows("MySampleTable", "1");
+			databaseConnection.rollbackToSavepoint("empty");
+			asserter.tableMustBeEmpty("MySampleTable");
+		} finally {
+			databaseConnection.rollbackTestTransaction();
+		}
+		asserter.tableMustContainNumberOfRows("MySampleTable", "2");
+	}
+
+	@Test
+	public void checkFailedFileRollsBackOnlyItselfInTestTransaction() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.beginTestTransaction();
+		try {
+			query.executeSql("DELETE FROM MySampleTable WHERE Id = 2");
+			String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+			BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+			out.write("INSERT INTO MySampleTable (Id, Name) VALUES(3, 'Luke');\n");
+			out.write("INSERT INTO MySampleTable (Id, Name) VALUES(3, 'Luke');\n");
+			out.close();
+			try {
+				query.executeSqlFromFile(myFileName);
+				fail();
+			} catch (DatabaseLibraryException e) {
+				// Expected
+			}
+			asserter.tableMustContainNumberOfRows("MySampleTable", "1");
+		} finally {
+			databaseConnection.rollbackTestTransaction();
+		}
+		asserter.tableMustContainNumberOfRows("MySampleTable", "2");
+	}
+
+	@Test
+	public void checkTestTransactionKeepsPooledConnection() throws Exception {
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.connectToDatabase(ConnectionHelper.H2_DRIVER_CLASSNAME, ConnectionHelper.H2_URL,
+				ConnectionHelper.H2_USER, ConnectionHelper.H2_PASSWORD, "pooledAlias", "2", "0", "", "0", "0");
+		try {
+			databaseConnection.beginTestTransaction();
+			query.deleteAllRowsFromTable("MySampleTable");
+			DatabaseConnection.releaseBorrowedConnections();
+			assertEquals(1, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("active"));
+			asserter.tableMustBeEmpty("MySampleTable");
+			DatabaseConnection.releaseBorrowedConnections();
+			databaseConnection.rollbackTestTransaction();
+			assertEquals(0, databaseConnection.getConnectionPoolStatistics("pooledAlias").get("active"));
+			asserter.tableMustContainNumberOfRows("MySampleTable", "2");
+		} finally {
+			databaseConnection.disconnectFromDatabase("pooledAlias");
+		}
+	}
+
+	@Test
+	public void checkSavepointRequiresTestTransaction() throws Exception {
+		try {
+			new DatabaseConnection().setSavepoint("nothing");
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("No test transaction open for alias defaultAlias"));
+		}
+	}
+
 	// ========================================================
 	//
 	// Check Execute SQL From File
@@ -101,6 +666,170 @@ public class QueryIT {
 		asserter.tableMustExist("TESTTABLEESFFMLC");
 	}
 
+	@Test
+	public void checkExecuteSQLFromFileWithDelimitersInQuotesAndComments() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("CREATE TABLE TestTableESFFQ (Name VARCHAR(100)); -- comment; with delimiter\n");
+		out.write("INSERT INTO TestTableESFFQ VALUES('a;b'); INSERT INTO TestTableESFFQ\n");
+		out.write("VALUES('it''s;\n-- not a comment');\n");
+		out.write("/* block; comment */ INSERT INTO TestTableESFFQ VALUES('/* not; a comment */');\n");
+		out.write("REM last statement has no delimiter\n");
+		out.write("INSERT INTO \"TESTTABLEESFFQ\" VALUES('last')\n");
+		out.close();
+		query.executeSqlFromFile(myFileName);
+		asserter.tableMustContainNumberOfRows("TestTableESFFQ", "4");
+		asserter.verifyNumberOfRowsMatchingWhere("TestTableESFFQ", "Name='a;b'", "1");
+		asserter.verifyNumberOfRowsMatchingWhere("TestTableESFFQ", "Name='it''s;\n-- not a comment'", "1");
+		asserter.verifyNumberOfRowsMatchingWhere("TestTableESFFQ", "Name='/* not; a comment */'", "1");
+	}
+
+	@Test
+	public void checkSqlTokenizerWithDollarQuotes() throws Exception {
+		SqlTokenizer tokenizer = new SqlTokenizer(new StringReader(
+				"CREATE FUNCTION f() RETURNS int AS $body$ BEGIN; RETURN 1; END; $body$ LANGUAGE plpgsql;\n"
+						+ "SELECT $1, $$a;b$$, E'c\\';d';"),
+				";");
+		assertEquals("CREATE FUNCTION f() RETURNS int AS $body$ BEGIN; RETURN 1; END; $body$ LANGUAGE plpgsql",
+				tokenizer.next());
+		assertEquals("SELECT $1, $$a;b$$, E'c\\';d'", tokenizer.next());
+		assertEquals(null, tokenizer.next());
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileWithLineDelimiter() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("CREATE TABLE TestTableESFFGO (Num Integer)\n");
+		out.write("go\n");
+		out.write("INSERT INTO TestTableESFFGO VALUES(1);\n");
+		out.write("  GO  \n");
+		out.write("DELIMITER //\n");
+		out.write("INSERT INTO TestTableESFFGO VALUES(2)//\n");
+		out.close();
+		query.executeSqlFromFile(myFileName, "0", "GO");
+		asserter.tableMustContainNumberOfRows("TestTableESFFGO", "2");
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileUsesScriptCache() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("CREATE TABLE TestTableESFFSC (Num Integer);\n");
+		out.write("INSERT INTO TestTableESFFSC VALUES(1);\n");
+		out.close();
+		long hits = (Long) query.getScriptCacheStatistics().get("hits");
+		query.executeSqlFromFile(myFileName);
+		query.executeSqlFromFileIgnoreErrors(myFileName);
+		assertEquals(hits + 1, query.getScriptCacheStatistics().get("hits"));
+		asserter.tableMustContainNumberOfRows("TestTableESFFSC", "2");
+
+		// Changed file is read again
+		out = new BufferedWriter(new FileWriter(myFileName, true));
+		out.write("INSERT INTO TestTableESFFSC VALUES(2);\n");
+		out.close();
+		query.executeSqlFromFileIgnoreErrors(myFileName);
+		assertEquals(hits + 1, query.getScriptCacheStatistics().get("hits"));
+		asserter.tableMustContainNumberOfRows("TestTableESFFSC", "4");
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileInParallel() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("CREATE TABLE TestTableESFFPA (Num Integer);\n");
+		out.write("CREATE TABLE TestTableESFFPB (Num Integer);\n");
+		out.write("-- @section a\n");
+		out.write("INSERT INTO TestTableESFFPA VALUES(1);\n");
+		out.write("INSERT INTO TestTableESFFPA VALUES(2);\n");
+		out.write("-- @section b\n");
+		out.write("INSERT INTO TestTableESFFPB VALUES(1);\n");
+		out.write("-- @sequential\n");
+		out.write("INSERT INTO TestTableESFFPB SELECT Num FROM TestTableESFFPA;\n");
+		out.close();
+		Map<String, Long> timings = query.executeSqlFromFileInParallel(myFileName, "2", "stop");
+		assertEquals(Arrays.asList("a", "b"), Arrays.asList(timings.keySet().toArray()));
+		asserter.tableMustContainNumberOfRows("TestTableESFFPA", "2");
+		asserter.tableMustContainNumberOfRows("TestTableESFFPB", "3");
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileInParallelStopsOnFailure() throws Exception {
+		query.executeSql("CREATE TABLE TestTableESFFPF (Num Integer PRIMARY KEY)");
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("-- @section a\n");
+		out.write("INSERT INTO TestTableESFFPF VALUES(1);\n");
+		out.write("INSERT INTO TestTableESFFPF VALUES(1);\n");
+		out.write("-- @sequential\n");
+		out.write("INSERT INTO TestTableESFFPF VALUES(2);\n");
+		out.close();
+		try {
+			query.executeSqlFromFileInParallel(myFileName, "2", "stop");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 1 sections failed:\na: "));
+		}
+		asserter.tableMustBeEmpty("TestTableESFFPF");
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileInParallelUsesStatementOptionsOfAlias() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("-- @section a\n");
+		out.write("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) A, SYSTEM_RANGE(1, 100000) B;\n");
+		out.close();
+		DatabaseConnection databaseConnection = new DatabaseConnection();
+		databaseConnection.setStatementOptions("0", "0", "1", "defaultAlias");
+		long start = System.currentTimeMillis();
+		try {
+			query.executeSqlFromFileInParallel(myFileName, "1", "stop");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue("Section was not cancelled in time", System.currentTimeMillis() - start < 10000);
+		} finally {
+			databaseConnection.setStatementOptions("0", "0", "0", "defaultAlias");
+		}
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileBatched() throws Exception {
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("CREATE TABLE TestTableESFFB (Num Integer PRIMARY KEY);\n");
+		out.write("INSERT INTO TestTableESFFB VALUES(1);\n");
+		out.write("INSERT INTO TestTableESFFB\n");
+		out.write("VALUES(2);\n");
+		out.write("UPDATE TestTableESFFB SET Num = 3 WHERE Num = 2;\n");
+		out.write("INSERT INTO TestTableESFFB VALUES(4);\n");
+		out.close();
+		query.executeSqlFromFile(myFileName, "2");
+		asserter.tableMustContainNumberOfRows("TestTableESFFB", "3");
+		asserter.checkContentForRowIdentifiedByWhereClause("Num", "3", "TestTableESFFB", "Num=3");
+	}
+
+	@Test
+	public void checkExecuteSQLFromFileBatchedRollsBackOnError() throws Exception {
+		query.executeSql("CREATE TABLE TestTableESFFBE (Num Integer PRIMARY KEY)");
+		String myFileName = folder.getRoot().getPath() + File.separator + "myFile.sql";
+		BufferedWriter out = new BufferedWriter(new FileWriter(myFileName));
+		out.write("INSERT INTO TestTableESFFBE VALUES(1);\n");
+		out.write("INSERT INTO TestTableESFFBE VALUES(1);\n");
+		out.write("INSERT INTO TestTableESFFBE VALUES(2);\n");
+		out.close();
+		try {
+			query.executeSqlFromFile(myFileName, "10");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("(statement 2 of batch of 3)"));
+		}
+		asserter.tableMustBeEmpty("TestTableESFFBE");
+
+		query.executeSqlFromFileIgnoreErrors(myFileName, "10");
+		asserter.tableMustContainNumberOfRows("TestTableESFFBE", "2");
+	}
+
 	@Test
 	public void checkExecuteSQLFromFileIgnoreErrorsSingleLine() throws Exception {
 		folder.getRoot();
@@ -160,6 +889,41 @@ public class QueryIT {
 		System.out.println("Single Value Fetched: " + name);
 		assertEquals("Value found", "", name);
 	}
+
+	@Test
+	public void checkReadSingleValueFromTableFailsIfMoreThanOneRow() throws Exception {
+		try {
+			query.readSingleValueFromTable("MySampleTable", "Name", "id>0");
+			fail();
+		} catch (DatabaseLibraryException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("More than one value fetched"));
+		}
+	}
+
+	@Test
+	public void checkReadSingleValueFromTableWithParameters() throws Exception {
+		assertEquals("Darth Vader", query.readSingleValueFromTableWithParameters("MySampleTable", "Name", "id=?",
+				Arrays.<Object>asList(2)));
+	}
+
+	@Test
+	public void checkReadRowAsDictionary() throws Exception {
+		Map<String, Object> row = query.readRowAsDictionary("MySampleTable", "Id, Name", "Name=?",
+				Arrays.<Object>asList("Darth Vader"));
+		assertEquals(Arrays.asList("ID", "NAME"), Arrays.asList(row.keySet().toArray()));
+		assertEquals(2, row.get("ID"));
+		assertTrue(query.readRowAsDictionary("MySampleTable", "Id", "id=23").isEmpty());
+	}
+
+	@Test
+	public void checkReadValuesFromTable() throws Exception {
+		Map<String, String> names = query.readValuesFromTable("MySampleTable", "Name", "Id",
+				Arrays.<Object>asList(2, 1, 23));
+		assertEquals(Arrays.asList("2", "1", "23"), Arrays.asList(names.keySet().toArray()));
+		assertEquals("Darth Vader", names.get("2"));
+		assertEquals("Donny Darko", names.get("1"));
+		assertEquals("", names.get("23"));
+	}
 	
 	// ========================================================
 	//